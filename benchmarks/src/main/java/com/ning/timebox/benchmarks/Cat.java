@@ -0,0 +1,16 @@
+package com.ning.timebox.benchmarks;
+
+public class Cat
+{
+    private final int livesRemaining;
+
+    public Cat(int livesRemaining)
+    {
+        this.livesRemaining = livesRemaining;
+    }
+
+    public int getLivesRemaining()
+    {
+        return livesRemaining;
+    }
+}
@@ -0,0 +1,65 @@
+package com.ning.timebox.benchmarks;
+
+import com.ning.timebox.TimeBox;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of building a box, per Tesseract shape, and from a built plan.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConstructionBenchmark
+{
+    @Benchmark
+    public TimeBox<Integer> single()
+    {
+        return TimeBox.timebox(new Shapes.Single());
+    }
+
+    @Benchmark
+    public TimeBox<Integer> tiered()
+    {
+        return TimeBox.timebox(new Shapes.Tiered());
+    }
+
+    @Benchmark
+    public TimeBox<Integer> tieredFromPlan()
+    {
+        return Shapes.TIERED_PLAN.newBox();
+    }
+
+    @Benchmark
+    public TimeBox<Integer> gathering()
+    {
+        return TimeBox.timebox(new Shapes.Gathering());
+    }
+
+    @Benchmark
+    public TimeBox<Integer> guardedByMethod()
+    {
+        return TimeBox.timebox(new Shapes.GuardedByMethod());
+    }
+
+    @Benchmark
+    public TimeBox<Integer> guardedByRuby()
+    {
+        return TimeBox.timebox(new Shapes.GuardedByRuby());
+    }
+
+    @Benchmark
+    public TimeBox<Integer> guardedByClojure()
+    {
+        return TimeBox.timebox(new Shapes.GuardedByClojure());
+    }
+}
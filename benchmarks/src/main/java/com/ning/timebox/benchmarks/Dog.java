@@ -0,0 +1,23 @@
+package com.ning.timebox.benchmarks;
+
+public class Dog
+{
+    private final String name;
+    private final int age;
+
+    public Dog(String name, int age)
+    {
+        this.name = name;
+        this.age = age;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public int getAge()
+    {
+        return age;
+    }
+}
@@ -0,0 +1,54 @@
+package com.ning.timebox.benchmarks;
+
+import com.ning.timebox.TimeBox;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gathering many values into a box, then reacting.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GatherBenchmark
+{
+    @Param({"10", "100", "1000"})
+    public int values;
+
+    private Dog[] dogs;
+    private final Cat cat = new Cat(9);
+
+    @Setup
+    public void setUp()
+    {
+        dogs = new Dog[values];
+        for (int i = 0; i < values; i++) {
+            dogs[i] = new Dog("Dog" + i, i % 15);
+        }
+    }
+
+    @Benchmark
+    public Integer gatherThenReact() throws Exception
+    {
+        TimeBox<Integer> box = TimeBox.timebox(new Shapes.Gathering());
+        for (Dog dog : dogs) {
+            box.provide(dog);
+        }
+        box.provide(cat);
+        return box.react(1, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,59 @@
+package com.ning.timebox.benchmarks;
+
+import com.ning.timebox.TimeBox;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * provide() through a guarded parameter, for each kind of guard. The guard rejects the
+ * value, so it is evaluated on every call.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GuardBenchmark
+{
+    private TimeBox<Integer> byMethod;
+    private TimeBox<Integer> byRuby;
+    private TimeBox<Integer> byClojure;
+    private final Dog dog = new Dog("Bean", 7);
+
+    @Setup
+    public void setUp()
+    {
+        byMethod = TimeBox.timebox(new Shapes.GuardedByMethod());
+        byRuby = TimeBox.timebox(new Shapes.GuardedByRuby());
+        byClojure = TimeBox.timebox(new Shapes.GuardedByClojure());
+    }
+
+    @Benchmark
+    public void guardMethod()
+    {
+        byMethod.provide(dog);
+    }
+
+    @Benchmark
+    public void ruby()
+    {
+        byRuby.provide(dog);
+    }
+
+    @Benchmark
+    public void clojure()
+    {
+        byClojure.provide(dog);
+    }
+}
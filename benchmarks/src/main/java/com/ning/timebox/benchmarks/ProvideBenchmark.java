@@ -0,0 +1,60 @@
+package com.ning.timebox.benchmarks;
+
+import com.ning.timebox.TimeBox;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * provide() throughput against one shared box, from one and from several threads. The
+ * box never satisfies its top priority, so every value is routed to every handler.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProvideBenchmark
+{
+    private TimeBox<Integer> box;
+    private Dog dog;
+
+    @Setup
+    public void setUp()
+    {
+        box = TimeBox.timebox(new Shapes.Tiered());
+        dog = new Dog("Bean", 3);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void singleThreaded()
+    {
+        box.provide(dog, 1);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void fourThreads()
+    {
+        box.provide(dog, 1);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void sixteenThreads()
+    {
+        box.provide(dog, 1);
+    }
+}
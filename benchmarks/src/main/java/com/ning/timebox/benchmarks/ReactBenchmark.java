@@ -0,0 +1,47 @@
+package com.ning.timebox.benchmarks;
+
+import com.ning.timebox.TimeBox;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of a whole box round trip when its best reactor is already satisfied, and
+ * when only a lower priority one is and react() returns on an already elapsed deadline.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ReactBenchmark
+{
+    private final Dog dog = new Dog("Bean", 3);
+    private final Cat cat = new Cat(9);
+
+    @Benchmark
+    public Integer satisfied() throws Exception
+    {
+        TimeBox<Integer> box = TimeBox.timebox(new Shapes.Tiered());
+        box.provide(dog, 10);
+        box.provide(cat);
+        return box.react(1, TimeUnit.SECONDS);
+    }
+
+    @Benchmark
+    public Integer fallsBack() throws Exception
+    {
+        TimeBox<Integer> box = TimeBox.timebox(new Shapes.Tiered());
+        box.provide(dog);
+        return box.react(0, TimeUnit.NANOSECONDS);
+    }
+}
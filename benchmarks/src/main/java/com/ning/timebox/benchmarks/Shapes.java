@@ -0,0 +1,158 @@
+package com.ning.timebox.benchmarks;
+
+import com.ning.timebox.Authority;
+import com.ning.timebox.Gather;
+import com.ning.timebox.GuardMethod;
+import com.ning.timebox.Priority;
+import com.ning.timebox.Reactor;
+import com.ning.timebox.Tesseract;
+import com.ning.timebox.TimeBoxPlan;
+import com.ning.timebox.clojure.CLJ;
+import com.ning.timebox.ruby.Rb;
+
+import java.util.Collection;
+
+/**
+ * Tesseract shapes, and one built plan, exercised by the benchmarks.
+ */
+public final class Shapes
+{
+    private Shapes()
+    {
+    }
+
+    public static class Single extends Tesseract<Integer>
+    {
+        @Priority(1)
+        public void only(Dog dog)
+        {
+            setResult(dog.getAge());
+        }
+    }
+
+    public static class Tiered extends Tesseract<Integer>
+    {
+        @Priority(3)
+        public void best(@Authority(10) Dog dog, Cat cat)
+        {
+            setResult(dog.getAge() + cat.getLivesRemaining());
+        }
+
+        @Priority(2)
+        public void okay(Dog dog)
+        {
+            setResult(dog.getAge());
+        }
+
+        @Priority(1)
+        public void cat(Cat cat)
+        {
+            setResult(cat.getLivesRemaining());
+        }
+
+        @Priority(0)
+        public void fallback()
+        {
+            setResult(-1);
+        }
+    }
+
+    public static class Gathering extends Tesseract<Integer>
+    {
+        @Priority(2)
+        public void all(@Gather Collection<Dog> dogs, Cat cat)
+        {
+            setResult(dogs.size());
+        }
+
+        @Priority(1)
+        public void some(@Gather Collection<Dog> dogs)
+        {
+            setResult(dogs.size());
+        }
+    }
+
+    public static class GuardedByMethod extends Tesseract<Integer>
+    {
+        @Priority(2)
+        public void puppy(@GuardMethod("isPuppy") Dog dog)
+        {
+            setResult(dog.getAge());
+        }
+
+        @Priority(1)
+        public void any(Dog dog)
+        {
+            setResult(-1);
+        }
+
+        public boolean isPuppy(Dog dog)
+        {
+            return dog.getAge() < 2;
+        }
+    }
+
+    public static class GuardedByRuby extends Tesseract<Integer>
+    {
+        @Priority(2)
+        public void puppy(@Rb("|d| d.age < 2") Dog dog)
+        {
+            setResult(dog.getAge());
+        }
+
+        @Priority(1)
+        public void any(Dog dog)
+        {
+            setResult(-1);
+        }
+    }
+
+    public static class GuardedByClojure extends Tesseract<Integer>
+    {
+        @Priority(2)
+        public void puppy(@CLJ("#(< (.getAge %) 2)") Dog dog)
+        {
+            setResult(dog.getAge());
+        }
+
+        @Priority(1)
+        public void any(Dog dog)
+        {
+            setResult(-1);
+        }
+    }
+
+    /**
+     * The same reactors as {@link Tiered}, declared through the plan builder.
+     */
+    public static final TimeBoxPlan<Integer> TIERED_PLAN = TimeBoxPlan.<Integer>builder()
+        .reactor(3, new Reactor<Integer>()
+        {
+            public Integer react(Object[] arguments)
+            {
+                return ((Dog) arguments[0]).getAge() + ((Cat) arguments[1]).getLivesRemaining();
+            }
+        }).slot(Dog.class).authority(10).slot(Cat.class)
+        .reactor(2, new Reactor<Integer>()
+        {
+            public Integer react(Object[] arguments)
+            {
+                return ((Dog) arguments[0]).getAge();
+            }
+        }).slot(Dog.class)
+        .reactor(1, new Reactor<Integer>()
+        {
+            public Integer react(Object[] arguments)
+            {
+                return ((Cat) arguments[0]).getLivesRemaining();
+            }
+        }).slot(Cat.class)
+        .reactor(0, new Reactor<Integer>()
+        {
+            public Integer react(Object[] arguments)
+            {
+                return -1;
+            }
+        })
+        .build();
+}
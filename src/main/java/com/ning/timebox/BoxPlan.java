@@ -0,0 +1,199 @@
+package com.ning.timebox;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static java.lang.String.format;
+
+/**
+ * The reflected shape of a {@link Tesseract} class: its reactor methods in descending
+ * priority order. With the default factory, plans are compiled once per class and shared
+ * by every {@link TimeBox} built for that class, so a new box only allocates its value
+ * slots.
+ */
+final class BoxPlan
+{
+    // plans for the default factory, by tesseract class; classes are not pinned by this
+    private static final ClassValue<BoxPlan> DEFAULT_PLANS = new ClassValue<BoxPlan>()
+    {
+        @Override
+        protected BoxPlan computeValue(Class<?> type)
+        {
+            return new BoxPlan(new DefaultFactory(), type, true);
+        }
+    };
+
+    private final List<HandlerPlan> handlers;
+    private final int pureGuards;
+
+    // for each concrete value class, the handler slots which could accept it; a ClassValue
+    // installs an entry in every value class it sees, so only shared plans use one
+    private final ClassValue<Route[]> sharedRoutes;
+    private final ConcurrentMap<Class<?>, Route[]> routes;
+
+    private BoxPlan(Factory factory, Class<?> type, boolean shared)
+    {
+        List<HandlerPlan> plans = new ArrayList<HandlerPlan>();
+        HandlerPlan.GuardHouses houses = new HandlerPlan.GuardHouses();
+        for (Method method : type.getDeclaredMethods()) {
+            if (Modifier.isPublic(method.getModifiers()) && method.isAnnotationPresent(Priority.class)) {
+                int priority = method.getAnnotation(Priority.class).value();
+                plans.add(new HandlerPlan(factory, houses, priority, method));
+            }
+        }
+        this.handlers = ordered(plans);
+        this.pureGuards = houses.getPureGuardCount();
+        this.sharedRoutes = shared ? routeIndex() : null;
+        this.routes = shared ? null : new ConcurrentHashMap<Class<?>, Route[]>();
+    }
+
+    private BoxPlan(List<HandlerPlan> plans)
+    {
+        this.handlers = ordered(new ArrayList<HandlerPlan>(plans));
+        this.pureGuards = 0;
+        this.sharedRoutes = routeIndex();
+        this.routes = null;
+    }
+
+    private ClassValue<Route[]> routeIndex()
+    {
+        return new ClassValue<Route[]>()
+        {
+            @Override
+            protected Route[] computeValue(Class<?> type)
+            {
+                return route(type);
+            }
+        };
+    }
+
+    /**
+     * Sorts reactors by descending priority, which must be unique.
+     */
+    private static List<HandlerPlan> ordered(List<HandlerPlan> plans)
+    {
+        Collections.sort(plans, new Comparator<HandlerPlan>()
+        {
+            public int compare(HandlerPlan first, HandlerPlan second)
+            {
+                return Integer.valueOf(first.getPriority()).compareTo(second.getPriority()) * -1;
+            }
+        });
+        for (int i = 1; i < plans.size(); i++) {
+            if (plans.get(i).getPriority() == plans.get(i - 1).getPriority()) {
+                throw new IllegalArgumentException(format("multiple reactor methods have priority %d",
+                                                          plans.get(i).getPriority()));
+            }
+        }
+        return Collections.unmodifiableList(plans);
+    }
+
+    /**
+     * A plan of reactors declared through {@link TimeBoxPlan#builder()}; these are not
+     * cached, as the {@link TimeBoxPlan} holding the plan is itself reused.
+     */
+    static BoxPlan forReactors(List<HandlerPlan> plans)
+    {
+        return new BoxPlan(plans);
+    }
+
+    /**
+     * The plan for a tesseract class. Plans made with a plain {@link DefaultFactory} are
+     * compiled once per class; a custom factory may hand out different guard houses
+     * each time, so plans made with one are compiled afresh.
+     */
+    static BoxPlan forClass(Factory factory, Class<?> type)
+    {
+        if (factory.getClass() == DefaultFactory.class) {
+            return DEFAULT_PLANS.get(type);
+        }
+        return new BoxPlan(factory, type, false);
+    }
+
+    /**
+     * Reactor methods, highest priority first.
+     */
+    List<HandlerPlan> getHandlers()
+    {
+        return handlers;
+    }
+
+    /**
+     * Number of distinct pure guards, which is the size of a box's {@link GuardMemo}.
+     */
+    int getPureGuardCount()
+    {
+        return pureGuards;
+    }
+
+    /**
+     * The slots, in handler priority order, which a value of the given class may fill.
+     */
+    Route[] routesFor(Class<?> type)
+    {
+        if (sharedRoutes != null) {
+            return sharedRoutes.get(type);
+        }
+        Route[] found = routes.get(type);
+        if (found == null) {
+            found = route(type);
+            Route[] existing = routes.putIfAbsent(type, found);
+            if (existing != null) {
+                found = existing;
+            }
+        }
+        return found;
+    }
+
+    private Route[] route(Class<?> type)
+    {
+        List<Route> found = new ArrayList<Route>();
+        for (int h = 0; h < handlers.size(); h++) {
+            HandlerPlan plan = handlers.get(h);
+            int[] slots = new int[plan.getArity()];
+            int count = 0;
+            for (int i = 0; i < plan.getArity(); i++) {
+                if (plan.isKeyed(i)) {
+                    continue;
+                }
+                Class accepted = plan.isGather(i) ? plan.getGatheredType(i) : plan.getType(i);
+                if (accepted.isAssignableFrom(type)) {
+                    slots[count++] = i;
+                }
+            }
+            if (count > 0) {
+                found.add(new Route(h, Arrays.copyOf(slots, count)));
+            }
+        }
+        return found.toArray(new Route[found.size()]);
+    }
+
+    static final class Route
+    {
+        private final int handler;
+        private final int[] slots;
+
+        Route(int handler, int[] slots)
+        {
+            this.handler = handler;
+            this.slots = slots;
+        }
+
+        int getHandler()
+        {
+            return handler;
+        }
+
+        int[] getSlots()
+        {
+            return slots;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.ning.timebox;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * When a box will stop waiting for values. Handed to {@link DeadlineCallable} providers
+ * so they can bound their own work (an RPC timeout, say) and skip work which can no
+ * longer finish in time, rather than learning of the deadline by being interrupted.
+ * <p>
+ * A box's deadline is known once it is set with {@link TimeBox#deadline} or the box
+ * starts to react, and it expires as soon as the box reacts, which may be early. Values
+ * from providers which finish after their deadline has expired are dropped.
+ */
+public final class Deadline
+{
+    private volatile long expiresAt;
+    private volatile boolean known = false;
+    private volatile boolean expired = false;
+
+    Deadline()
+    {
+    }
+
+    /**
+     * Time left before the box reacts, zero once it has, or Long.MAX_VALUE while no
+     * deadline has been set.
+     */
+    public long remaining(TimeUnit unit)
+    {
+        if (expired) {
+            return 0;
+        }
+        if (!known) {
+            return Long.MAX_VALUE;
+        }
+        long left = expiresAt - System.nanoTime();
+        return left <= 0 ? 0 : unit.convert(left, TimeUnit.NANOSECONDS);
+    }
+
+    public boolean isExpired()
+    {
+        return expired || (known && expiresAt - System.nanoTime() <= 0);
+    }
+
+    /**
+     * Brings the deadline forward to the given time from now, unless it is already
+     * earlier.
+     */
+    synchronized void limit(long number, TimeUnit unit)
+    {
+        // keep far-off deadlines clear of nanoTime() overflow
+        long nanoTime = System.nanoTime() + Math.min(unit.toNanos(number), Long.MAX_VALUE / 2);
+        if (!known || nanoTime - expiresAt < 0) {
+            expiresAt = nanoTime;
+            known = true;
+        }
+    }
+
+    void expire()
+    {
+        expired = true;
+    }
+}
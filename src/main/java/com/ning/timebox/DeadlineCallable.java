@@ -0,0 +1,11 @@
+package com.ning.timebox;
+
+/**
+ * A provider which is told the deadline of the box it provides to.
+ *
+ * @see TimeBox#providing(DeadlineCallable, int)
+ */
+public interface DeadlineCallable<V>
+{
+    V call(Deadline deadline) throws Exception;
+}
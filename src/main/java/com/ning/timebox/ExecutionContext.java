@@ -0,0 +1,187 @@
+package com.ning.timebox;
+
+import java.io.Closeable;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The threads a {@link TimeBox} runs on: an executor for {@link TimeBox#providing}
+ * callables and a timer for deadlines. Boxes share {@link #shared()} unless given a
+ * context of their own, so creating a box never creates threads.
+ * <p>
+ * A context shuts down the executors it created when closed; executors handed to
+ * {@link #ExecutionContext(ExecutorService, ScheduledExecutorService)} remain the
+ * caller's to manage.
+ */
+public class ExecutionContext implements Closeable
+{
+    /**
+     * System property sizing the provider pool of the shared context.
+     */
+    public static final String THREADS_PROPERTY = "timebox.threads";
+
+    private static volatile ExecutionContext shared;
+
+    private final ExecutorService executor;
+    private final ScheduledExecutorService timer;
+    private final boolean owned;
+    private volatile boolean closed = false;
+
+    /**
+     * A context owning a pool of at most {@code threads} provider threads, which time out
+     * when idle, and a single timer thread. All threads are daemons.
+     */
+    public ExecutionContext(int threads)
+    {
+        this(threads, "timebox");
+    }
+
+    private ExecutionContext(int threads, String name)
+    {
+        this(fixedPool(threads, name), timer(name), true);
+    }
+
+    /**
+     * A context over executors managed by the caller; closing it does not shut them down.
+     */
+    public ExecutionContext(ExecutorService executor, ScheduledExecutorService timer)
+    {
+        this(executor, timer, false);
+    }
+
+    private ExecutionContext(ExecutorService executor, ScheduledExecutorService timer, boolean owned)
+    {
+        this.executor = executor;
+        this.timer = timer;
+        this.owned = owned;
+    }
+
+    /**
+     * A new context which runs every provider on its own virtual thread, so that
+     * blocking providers need no pool sizing. On runtimes without virtual threads it
+     * falls back to an unbounded pool of daemon platform threads. Providers still
+     * running when their box reacts are interrupted, as with any other context.
+     */
+    public static ExecutionContext virtualThreads()
+    {
+        ExecutorService executor = newVirtualThreadExecutor();
+        if (executor == null) {
+            executor = Executors.newCachedThreadPool(new DaemonThreadFactory("timebox-provider"));
+        }
+        return new ExecutionContext(executor, timer("timebox-virtual"), true);
+    }
+
+    /**
+     * Executors.newVirtualThreadPerTaskExecutor(), if this runtime has it.
+     */
+    private static ExecutorService newVirtualThreadExecutor()
+    {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        }
+        catch (NoSuchMethodException e) {
+            return null;
+        }
+        catch (Exception e) {
+            // present but unusable, e.g. still a preview feature
+            return null;
+        }
+    }
+
+    private static ExecutorService fixedPool(int threads, String name)
+    {
+        if (threads < 1) {
+            throw new IllegalArgumentException("an execution context needs at least one thread");
+        }
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads,
+                                                         threads,
+                                                         60L,
+                                                         TimeUnit.SECONDS,
+                                                         new LinkedBlockingQueue<Runnable>(),
+                                                         new DaemonThreadFactory(name));
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    private static ScheduledExecutorService timer(String name)
+    {
+        return Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory(name + "-timer"));
+    }
+
+    /**
+     * The context used by boxes which are not given one. Its provider pool is sized by
+     * the {@value #THREADS_PROPERTY} system property, defaulting to four threads per
+     * processor (at least sixteen). If it has been closed a fresh one is created.
+     */
+    public static ExecutionContext shared()
+    {
+        ExecutionContext context = shared;
+        if (context != null && !context.isClosed()) {
+            return context;
+        }
+        synchronized (ExecutionContext.class) {
+            context = shared;
+            if (context == null || context.isClosed()) {
+                int threads = Integer.getInteger(THREADS_PROPERTY,
+                                                 Math.max(16, 4 * Runtime.getRuntime().availableProcessors()));
+                context = new ExecutionContext(threads, "timebox-shared");
+                shared = context;
+            }
+            return context;
+        }
+    }
+
+    public ExecutorService getExecutor()
+    {
+        return executor;
+    }
+
+    public ScheduledExecutorService getTimer()
+    {
+        return timer;
+    }
+
+    public boolean isClosed()
+    {
+        return closed;
+    }
+
+    /**
+     * Shuts down owned executors, interrupting running providers. Boxes still using this
+     * context will have further work rejected.
+     */
+    public void close()
+    {
+        closed = true;
+        if (owned) {
+            executor.shutdownNow();
+            timer.shutdownNow();
+        }
+    }
+
+    private static final class DaemonThreadFactory implements ThreadFactory
+    {
+        private final AtomicInteger count = new AtomicInteger();
+        private final String name;
+
+        DaemonThreadFactory(String name)
+        {
+            this.name = name;
+        }
+
+        public Thread newThread(Runnable runnable)
+        {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -1,5 +1,9 @@
 package com.ning.timebox;
 
+/**
+ * Instantiates guard houses. Reactor plans are only cached per class for a plain
+ * {@link DefaultFactory}; boxes given any other factory compile their plan each time.
+ */
 public interface Factory
 {
     public <T> T instantiate(Class<T> clazz) throws InstantiationException, IllegalAccessException;
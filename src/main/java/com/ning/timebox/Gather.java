@@ -2,8 +2,49 @@ package com.ning.timebox;
 
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
+import java.util.Comparator;
 
 @Retention(RetentionPolicy.RUNTIME)
 public @interface Gather
 {
+    /**
+     * The reactor is not satisfied until at least this many values have been gathered.
+     */
+    int atLeast() default 0;
+
+    /**
+     * At most this many values are kept; storage for them is allocated up front.
+     */
+    int atMost() default Integer.MAX_VALUE;
+
+    /**
+     * What to do with values arriving once atMost have been gathered.
+     */
+    Overflow overflow() default Overflow.DROP_NEWEST;
+
+    /**
+     * Orders values for {@link Overflow#KEEP_TOP}; instantiated once through the
+     * {@link Factory}. Left unset, values are ranked by the authority they were provided
+     * with.
+     */
+    Class<? extends Comparator> comparator() default Comparator.class;
+
+    enum Overflow
+    {
+        /**
+         * Keep the first values gathered and ignore later ones.
+         */
+        DROP_NEWEST,
+
+        /**
+         * Keep the most recent values, discarding the oldest to make room.
+         */
+        DROP_OLDEST,
+
+        /**
+         * Keep the greatest values by the comparator (or by authority), discarding the
+         * least to make room.
+         */
+        KEEP_TOP
+    }
 }
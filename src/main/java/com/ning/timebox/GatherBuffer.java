@@ -0,0 +1,282 @@
+package com.ning.timebox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Storage for the values of one gathered parameter. Unbounded gathers append to a
+ * concurrent queue; bounded ones are presized to their capacity and apply the
+ * parameter's {@link Gather.Overflow} policy once full.
+ */
+abstract class GatherBuffer
+{
+    /**
+     * Value returned by {@link #add} when a value replaced another without growing the
+     * buffer.
+     */
+    static final int REPLACED = 0;
+
+    /**
+     * Value returned by {@link #add} when the value was not kept.
+     */
+    static final int REJECTED = -1;
+
+    static GatherBuffer create(int capacity, Gather.Overflow overflow, Comparator comparator)
+    {
+        if (capacity == Integer.MAX_VALUE) {
+            return new Unbounded();
+        }
+        switch (overflow) {
+            case DROP_OLDEST:
+                return new Ring(capacity);
+            case KEEP_TOP:
+                return new Top(capacity, comparator);
+            default:
+                return new Bounded(capacity);
+        }
+    }
+
+    /**
+     * Adds the value, returning the new size if the buffer grew, {@link #REPLACED} if
+     * it displaced another value, or {@link #REJECTED} if it was not kept.
+     */
+    abstract int add(Object value, long authority);
+
+    /**
+     * A copy of the values currently held.
+     */
+    abstract List<Object> snapshot();
+
+    /**
+     * Empties the buffer, keeping its storage.
+     */
+    abstract void clear();
+
+    private static final class Unbounded extends GatherBuffer
+    {
+        private final Queue<Object> values = new ConcurrentLinkedQueue<Object>();
+        private final AtomicInteger size = new AtomicInteger();
+
+        int add(Object value, long authority)
+        {
+            values.add(value);
+            return size.incrementAndGet();
+        }
+
+        List<Object> snapshot()
+        {
+            return new ArrayList<Object>(values);
+        }
+
+        void clear()
+        {
+            values.clear();
+            size.set(0);
+        }
+    }
+
+    /**
+     * Keeps the first values to arrive. Slots are claimed with compare-and-set, so adding
+     * never locks.
+     */
+    private static final class Bounded extends GatherBuffer
+    {
+        private final AtomicReferenceArray<Object> values;
+        private final AtomicInteger claimed = new AtomicInteger();
+        private final AtomicInteger size = new AtomicInteger();
+
+        Bounded(int capacity)
+        {
+            this.values = new AtomicReferenceArray<Object>(capacity);
+        }
+
+        int add(Object value, long authority)
+        {
+            int index;
+            do {
+                index = claimed.get();
+                if (index >= values.length()) {
+                    return REJECTED;
+                }
+            }
+            while (!claimed.compareAndSet(index, index + 1));
+
+            values.set(index, value);
+            return size.incrementAndGet();
+        }
+
+        List<Object> snapshot()
+        {
+            int count = Math.min(claimed.get(), values.length());
+            List<Object> copy = new ArrayList<Object>(count);
+            for (int i = 0; i < count; i++) {
+                Object value = values.get(i);
+                if (value != null) {
+                    copy.add(value);
+                }
+            }
+            return copy;
+        }
+
+        void clear()
+        {
+            for (int i = 0; i < values.length(); i++) {
+                values.set(i, null);
+            }
+            size.set(0);
+            claimed.set(0);
+        }
+    }
+
+    /**
+     * Keeps the most recent values in a ring.
+     */
+    private static final class Ring extends GatherBuffer
+    {
+        private final Object[] values;
+        private int next = 0;
+        private int size = 0;
+
+        Ring(int capacity)
+        {
+            this.values = new Object[capacity];
+        }
+
+        synchronized int add(Object value, long authority)
+        {
+            if (values.length == 0) {
+                return REJECTED;
+            }
+            values[next] = value;
+            next = (next + 1) % values.length;
+            if (size < values.length) {
+                return ++size;
+            }
+            return REPLACED;
+        }
+
+        synchronized List<Object> snapshot()
+        {
+            List<Object> copy = new ArrayList<Object>(size);
+            int start = size < values.length ? 0 : next;
+            for (int i = 0; i < size; i++) {
+                copy.add(values[(start + i) % values.length]);
+            }
+            return copy;
+        }
+
+        synchronized void clear()
+        {
+            Arrays.fill(values, null);
+            next = 0;
+            size = 0;
+        }
+    }
+
+    /**
+     * Keeps the greatest values in a min-heap, so the least kept value is at the root.
+     */
+    private static final class Top extends GatherBuffer
+    {
+        private final Object[] values;
+        private final long[] authorities;
+        private final Comparator comparator;
+        private int size = 0;
+
+        Top(int capacity, Comparator comparator)
+        {
+            this.values = new Object[capacity];
+            this.authorities = new long[capacity];
+            this.comparator = comparator;
+        }
+
+        synchronized int add(Object value, long authority)
+        {
+            if (size < values.length) {
+                values[size] = value;
+                authorities[size] = authority;
+                siftUp(size);
+                return ++size;
+            }
+            if (values.length == 0 || compare(value, authority, 0) <= 0) {
+                return REJECTED;
+            }
+            values[0] = value;
+            authorities[0] = authority;
+            siftDown(0);
+            return REPLACED;
+        }
+
+        synchronized List<Object> snapshot()
+        {
+            List<Object> copy = new ArrayList<Object>(size);
+            for (int i = 0; i < size; i++) {
+                copy.add(values[i]);
+            }
+            return copy;
+        }
+
+        synchronized void clear()
+        {
+            Arrays.fill(values, null);
+            size = 0;
+        }
+
+        @SuppressWarnings("unchecked")
+        private int compare(Object value, long authority, int index)
+        {
+            if (comparator == null) {
+                return authority < authorities[index] ? -1 : (authority == authorities[index] ? 0 : 1);
+            }
+            return comparator.compare(value, values[index]);
+        }
+
+        private void siftUp(int index)
+        {
+            while (index > 0) {
+                int parent = (index - 1) / 2;
+                if (compare(values[index], authorities[index], parent) >= 0) {
+                    return;
+                }
+                swap(index, parent);
+                index = parent;
+            }
+        }
+
+        private void siftDown(int index)
+        {
+            while (true) {
+                int least = index;
+                int left = 2 * index + 1;
+                int right = left + 1;
+                if (left < size && compare(values[left], authorities[left], least) < 0) {
+                    least = left;
+                }
+                if (right < size && compare(values[right], authorities[right], least) < 0) {
+                    least = right;
+                }
+                if (least == index) {
+                    return;
+                }
+                swap(index, least);
+                index = least;
+            }
+        }
+
+        private void swap(int i, int j)
+        {
+            Object value = values[i];
+            values[i] = values[j];
+            values[j] = value;
+            long authority = authorities[i];
+            authorities[i] = authorities[j];
+            authorities[j] = authority;
+        }
+    }
+}
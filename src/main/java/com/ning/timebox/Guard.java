@@ -0,0 +1,21 @@
+package com.ning.timebox;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+/**
+ * Guards a reactor parameter (or, for a method, its whole argument array) with a plain
+ * Java predicate: a class implementing {@link Predicate} or java.util.function.Predicate.
+ * The predicate is instantiated once per reactor plan through the {@link Factory} and is
+ * called directly, without reflection or a scripting runtime, so it must be thread safe.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Guard
+{
+    Class<?> value();
+
+    /**
+     * Whether results may be memoized; see {@link GuardAnnotation}.
+     */
+    boolean pure() default false;
+}
@@ -3,6 +3,13 @@ package com.ning.timebox;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 
+/**
+ * Marks an annotation type as a guard, naming the {@link GuardHouse} which builds its
+ * predicates. A guard annotation may also declare a {@code boolean pure()} member,
+ * declaring that the guard's outcome depends only on the value tested. When it is true,
+ * argument and gather predicates built from the annotation are memoized per box by value
+ * identity, so each value is tested against the guard once and the result reused.
+ */
 @Retention(RetentionPolicy.RUNTIME)
 public @interface GuardAnnotation
 {
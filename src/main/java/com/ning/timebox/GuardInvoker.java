@@ -0,0 +1,96 @@
+package com.ning.timebox;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Calls a boolean guard method, bound to a method handle once per class where possible.
+ * Failures of the guard itself are reported as {@link InvocationTargetException}.
+ *
+ * @see Invoker
+ */
+abstract class GuardInvoker
+{
+    static GuardInvoker forMethod(Method method)
+    {
+        MethodHandle handle = Invoker.handleFor(method);
+        if (handle == null) {
+            return new ReflectiveGuardInvoker(method);
+        }
+        return new MethodHandleGuardInvoker(method, handle);
+    }
+
+    static boolean returnsBoolean(Method method)
+    {
+        return Boolean.class.equals(method.getReturnType()) || boolean.class.equals(method.getReturnType());
+    }
+
+    /**
+     * Invokes a boolean method taking a single argument.
+     */
+    abstract boolean test(Object target, Object arg) throws InvocationTargetException, IllegalAccessException;
+
+    /**
+     * Invokes a boolean method taking all of the given arguments.
+     */
+    abstract boolean test(Object target, Object[] args) throws InvocationTargetException, IllegalAccessException;
+
+    private static final class MethodHandleGuardInvoker extends GuardInvoker
+    {
+        private final MethodHandle predicate;
+        private final MethodHandle spreadPredicate;
+
+        MethodHandleGuardInvoker(Method method, MethodHandle handle)
+        {
+            int arity = method.getParameterTypes().length;
+            MethodHandle instance = handle.asType(handle.type().changeParameterType(0, Object.class));
+            this.spreadPredicate = instance.asSpreader(Object[].class, arity)
+                                           .asType(MethodType.methodType(boolean.class, Object.class, Object[].class));
+            this.predicate = arity == 1
+                             ? instance.asType(MethodType.methodType(boolean.class, Object.class, Object.class))
+                             : null;
+        }
+
+        boolean test(Object target, Object arg) throws InvocationTargetException
+        {
+            try {
+                return (boolean) predicate.invokeExact(target, arg);
+            }
+            catch (Throwable e) {
+                throw new InvocationTargetException(e);
+            }
+        }
+
+        boolean test(Object target, Object[] args) throws InvocationTargetException
+        {
+            try {
+                return (boolean) spreadPredicate.invokeExact(target, args);
+            }
+            catch (Throwable e) {
+                throw new InvocationTargetException(e);
+            }
+        }
+    }
+
+    private static final class ReflectiveGuardInvoker extends GuardInvoker
+    {
+        private final Method method;
+
+        ReflectiveGuardInvoker(Method method)
+        {
+            this.method = method;
+        }
+
+        boolean test(Object target, Object arg) throws InvocationTargetException, IllegalAccessException
+        {
+            return (Boolean) method.invoke(target, arg);
+        }
+
+        boolean test(Object target, Object[] args) throws InvocationTargetException, IllegalAccessException
+        {
+            return (Boolean) method.invoke(target, args);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.ning.timebox;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Results of pure guards for the values provided to one box, so that a guard shared by
+ * several reactors runs once per value. Guards are numbered by the {@link BoxPlan};
+ * values are compared by identity. Two threads testing the same value at once may both
+ * run the guard, but only to the same result.
+ */
+final class GuardMemo
+{
+    private final AtomicReferenceArray<Map<Object, Boolean>> results;
+
+    GuardMemo(int guards)
+    {
+        this.results = new AtomicReferenceArray<Map<Object, Boolean>>(guards);
+    }
+
+    boolean test(int guard, Predicate<Object> predicate, Object value)
+    {
+        Map<Object, Boolean> memo = results.get(guard);
+        if (memo == null) {
+            results.compareAndSet(guard, null, Collections.synchronizedMap(new IdentityHashMap<Object, Boolean>()));
+            memo = results.get(guard);
+        }
+
+        Boolean known = memo.get(value);
+        if (known == null) {
+            known = predicate.test(value);
+            memo.put(value, known);
+        }
+        return known;
+    }
+
+    void clear()
+    {
+        for (int i = 0; i < results.length(); i++) {
+            results.set(i, null);
+        }
+    }
+}
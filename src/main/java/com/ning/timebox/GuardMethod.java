@@ -8,4 +8,9 @@ import java.lang.annotation.RetentionPolicy;
 public @interface GuardMethod
 {
     String value();
+
+    /**
+     * Whether results may be memoized; see {@link GuardAnnotation}.
+     */
+    boolean pure() default false;
 }
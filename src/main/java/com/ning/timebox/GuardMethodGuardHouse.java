@@ -3,31 +3,26 @@ package com.ning.timebox;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public class GuardMethodGuardHouse implements GuardHouse
 {
+    // guard methods are resolved once per (class, name, signature) and only bound per target
+    private final ConcurrentMap<List<Object>, GuardInvoker> invokers = new ConcurrentHashMap<List<Object>, GuardInvoker>();
+
     public Predicate<Object[]> buildMethodPredicate(Annotation a, final Object target, Method m)
     {
-        String method_name = ((GuardMethod) a).value();
-        final Method guard_method;
-        try {
-            guard_method = target.getClass().getMethod(method_name, m.getParameterTypes());
-        }
-        catch (NoSuchMethodException e) {
-            throw new IllegalStateException("no method with correct signature matches " + method_name, e);
-        }
-
-        if (!(Boolean.class.equals(guard_method.getReturnType())
-              || boolean.class.equals(guard_method.getReturnType())))
-        {
-            throw new IllegalStateException("guard method, " + method_name + " must return boolean");
-        }
+        final GuardInvoker guard = findGuard(target, ((GuardMethod) a).value(), m.getParameterTypes());
         return new Predicate<Object[]>()
         {
             public boolean test(Object[] arg)
             {
                 try {
-                    return (Boolean) guard_method.invoke(target, arg);
+                    return guard.test(target, arg);
                 }
                 catch (IllegalAccessException e) {
                     throw new IllegalStateException(e);
@@ -41,28 +36,27 @@ public class GuardMethodGuardHouse implements GuardHouse
 
     public Predicate<Object> buildArgumentPredicate(Annotation a, final Object target, Method m, int argumentIndex)
     {
-        String method_name = ((GuardMethod) a).value();
-        final Method guard_method;
-        try {
-            guard_method = target.getClass().getMethod(method_name, m.getParameterTypes()[argumentIndex]);
-        }
-        catch (NoSuchMethodException e) {
-            throw new IllegalStateException("no method with correct signature matches " + method_name, e);
-        }
+        return buildSinglePredicate(target, ((GuardMethod) a).value(), m.getParameterTypes()[argumentIndex]);
+    }
 
-        if (!(Boolean.class.equals(guard_method.getReturnType())
-              || boolean.class.equals(guard_method.getReturnType())))
-        {
-            throw new IllegalStateException("guard method, " + method_name + " must return boolean");
-        }
+    public Predicate<Object> buildGatherPredicate(Annotation a,
+                                                  final Object target,
+                                                  Method m,
+                                                  Class expectedType,
+                                                  int argumentIndex)
+    {
+        return buildSinglePredicate(target, ((GuardMethod) a).value(), expectedType);
+    }
 
+    private Predicate<Object> buildSinglePredicate(final Object target, String methodName, Class type)
+    {
+        final GuardInvoker guard = findGuard(target, methodName, type);
         return new Predicate<Object>()
         {
-
             public boolean test(Object arg)
             {
                 try {
-                    return (Boolean) guard_method.invoke(target, arg);
+                    return guard.test(target, arg);
                 }
                 catch (IllegalAccessException e) {
                     throw new IllegalStateException(e);
@@ -74,43 +68,32 @@ public class GuardMethodGuardHouse implements GuardHouse
         };
     }
 
-    public Predicate<Object> buildGatherPredicate(Annotation a,
-                                                  final Object target,
-                                                  Method m,
-                                                  Class expectedType,
-                                                  int argumentIndex)
+    private GuardInvoker findGuard(Object target, String methodName, Class... types)
     {
-        String method_name = ((GuardMethod) a).value();
+        List<Object> key = new ArrayList<Object>(types.length + 2);
+        key.add(target.getClass());
+        key.add(methodName);
+        key.addAll(Arrays.asList(types));
+
+        GuardInvoker invoker = invokers.get(key);
+        if (invoker != null) {
+            return invoker;
+        }
+
         final Method guard_method;
         try {
-            guard_method = target.getClass().getMethod(method_name, expectedType);
+            guard_method = target.getClass().getMethod(methodName, types);
         }
         catch (NoSuchMethodException e) {
-            throw new IllegalStateException("no method with correct signature matches " + method_name, e);
+            throw new IllegalStateException("no method with correct signature matches " + methodName, e);
         }
 
-        if (!(Boolean.class.equals(guard_method.getReturnType())
-              || boolean.class.equals(guard_method.getReturnType())))
-        {
-            throw new IllegalStateException("guard method, " + method_name + " must return boolean");
+        if (!GuardInvoker.returnsBoolean(guard_method)) {
+            throw new IllegalStateException("guard method, " + methodName + " must return boolean");
         }
 
-        return new Predicate<Object>()
-        {
-
-            public boolean test(Object arg)
-            {
-                try {
-                    return (Boolean) guard_method.invoke(target, arg);
-                }
-                catch (IllegalAccessException e) {
-                    throw new IllegalStateException(e);
-                }
-                catch (InvocationTargetException e) {
-                    throw new IllegalStateException(e);
-                }
-            }
-        };
-
+        invoker = GuardInvoker.forMethod(guard_method);
+        GuardInvoker existing = invokers.putIfAbsent(key, invoker);
+        return existing == null ? invoker : existing;
     }
 }
@@ -1,177 +1,343 @@
 package com.ning.timebox;
 
-import java.lang.annotation.Annotation;
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.lang.reflect.ParameterizedType;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
+/**
+ * Per-box state of a reactor method. Slots are updated with compare-and-set so that
+ * any number of providers may call {@link #provide} concurrently; gathered parameters
+ * add to a {@link GatherBuffer} which is copied out when the reactor runs.
+ * <p>
+ * Satisfaction is tracked incrementally: a count of empty slots is maintained as values
+ * arrive, and method guards are only re-run when some input has changed since they last
+ * ran.
+ */
 class Handler<T>
 {
-    private final Object[] values;
-    private final long[] authorities;
+    private final HandlerPlan plan;
+    private final AtomicReferenceArray<Slot> slots;
+    // what each slot holds before any value arrives
+    private final Slot[] unset;
+    private final GatherBuffer[] gathers;
+    // per-key slots of keyed parameters, and how many keys of each have values
+    private final AtomicReferenceArray<Slot>[] keyed;
+    private final AtomicInteger[] keysFilled;
     private final Tesseract<T> target;
-    private final Method method;
-    private final Class[] types;
+    private final GuardMemo memo;
     private final List<Predicate<Object[]>> methodTests = new ArrayList<Predicate<Object[]>>();
-    private final List<Collection<Predicate>> parameterTests;
+    private final List<List<Predicate>> parameterTests;
 
-    // null means do not gather
-    private final Class[] gatheredTypes;
+    // number of plain slots still empty, plus gathers and keyed parameters short of their minimum
+    private final AtomicInteger missing = new AtomicInteger();
+    // bumped whenever any argument changes
+    private final AtomicLong version = new AtomicLong();
+    private volatile Verdict verdict;
+    private volatile TimeBoxListener listener = TimeBoxListener.NONE;
 
-    public Handler(Factory factory, Tesseract<T> target, Method method)
+    public Handler(HandlerPlan plan, Tesseract<T> target, GuardMemo memo)
     {
-        this.types = method.getParameterTypes();
+        this.plan = plan;
+        this.memo = memo;
         this.target = target;
-        this.method = method;
-        this.values = new Object[types.length];
-        this.authorities = new long[types.length];
-        this.gatheredTypes = new Class[types.length];
-        this.parameterTests = new ArrayList<Collection<Predicate>>(method.getParameterTypes().length);
-
-        for (Annotation annotation : method.getAnnotations()) {
-            for (Class<?> iface : annotation.getClass().getInterfaces()) {
-                if (iface.isAnnotationPresent(GuardAnnotation.class)) {
-                    GuardAnnotation sp = iface.getAnnotation(GuardAnnotation.class);
-                    final GuardHouse p;
-                    try {
-                        p = factory.instantiate(sp.value());
-                    }
-                    catch (Exception e) {
-                        throw new IllegalStateException(e);
-                    }
-                    methodTests.add(p.buildMethodPredicate(annotation, target, method));
-                }
-            }
-        }
+        int arity = plan.getArity();
+        this.slots = new AtomicReferenceArray<Slot>(arity);
+        this.unset = new Slot[arity];
+        this.gathers = new GatherBuffer[arity];
+        this.keyed = new AtomicReferenceArray[arity];
+        this.keysFilled = new AtomicInteger[arity];
+        this.parameterTests = new ArrayList<List<Predicate>>(arity);
 
-        for (int i = 0; i < method.getParameterTypes().length; i++) {
-            parameterTests.add(new ArrayList<Predicate>());
+        for (HandlerPlan.GuardSpec guard : plan.getMethodGuards()) {
+            methodTests.add(guard.buildMethodPredicate(target, plan.getMethod()));
         }
 
-        // now prefill authorities to required authority - 1,
-        // so that when needed authoity comes in, it is at higher
-        Annotation[][] param_annos = method.getParameterAnnotations();
-        for (int i = 0; i < param_annos.length; i++) {
-            // loop through each parameter
-            authorities[i] = Long.MIN_VALUE;
-
-            GatherData gd = isGather(param_annos[i], i);
-            if (gd.isGather) {
-                this.values[gd.gatherIndex] = new ArrayList();
-                this.gatheredTypes[i] = gd.gatherType;
+        for (int i = 0; i < arity; i++) {
+            unset[i] = new Slot(null, plan.getRequiredAuthority(i));
+            if (plan.isGather(i)) {
+                gathers[i] = plan.newGatherBuffer(i);
+            }
+            else if (plan.isKeyed(i)) {
+                keyed[i] = new AtomicReferenceArray<Slot>(plan.getKeys(i).length);
+                keysFilled[i] = new AtomicInteger();
             }
 
-            for (Annotation annotation : param_annos[i]) {
-
-                if (annotation instanceof Authority) {
-                    authorities[i] = ((Authority) annotation).value();
+            List<Predicate> tests = new ArrayList<Predicate>();
+            for (HandlerPlan.GuardSpec guard : plan.getParameterGuards(i)) {
+                final Predicate<Object> pred;
+                if (plan.isGather(i) || plan.isKeyed(i)) {
+                    // tested against each element rather than the whole collection
+                    pred = guard.buildGatherPredicate(target,
+                                                      plan.getMethod(),
+                                                      plan.isGather(i) ? plan.getGatheredType(i) : plan.getKeyedType(i),
+                                                      i);
                 }
-
-                for (Class<?> iface : annotation.getClass().getInterfaces()) {
-                    if (iface.isAnnotationPresent(GuardAnnotation.class)) {
-                        GuardAnnotation sp = iface.getAnnotation(GuardAnnotation.class);
-                        final GuardHouse p;
-                        try {
-                            p = factory.instantiate(sp.value());
-                        }
-                        catch (Exception e) {
-                            throw new IllegalStateException(e);
-                        }
-                        final Predicate<Object> pred;
-                        if (gd.isGather) {
-                            pred = p.buildGatherPredicate(annotation, target, method, gd.gatherType, i);
-                        }
-                        else {
-                            pred = p.buildArgumentPredicate(annotation, target, method, i);
-                        }
-                        parameterTests.get(i).add(pred);
-                    }
+                else {
+                    pred = guard.buildArgumentPredicate(target, plan.getMethod(), i);
                 }
+                tests.add(pred);
             }
+            parameterTests.add(tests);
         }
+        clear();
     }
 
-
-    private class GatherData
+    /**
+     * Forgets every value provided so far, keeping the predicates and storage.
+     */
+    void clear()
     {
-        boolean isGather = false;
-        Class gatherType;
-        int gatherIndex;
+        int empty = 0;
+        for (int i = 0; i < slots.length(); i++) {
+            slots.set(i, unset[i]);
+            if (keyed[i] != null) {
+                for (int k = 0; k < keyed[i].length(); k++) {
+                    keyed[i].set(k, unset[i]);
+                }
+                keysFilled[i].set(0);
+            }
+            if (gathers[i] != null) {
+                gathers[i].clear();
+                if (plan.getGatherMinimum(i) > 0) {
+                    empty++;
+                }
+            }
+            else {
+                empty++;
+            }
+        }
+        missing.set(empty);
+        verdict = null;
+        version.incrementAndGet();
+        target.clearResult();
     }
 
-    private GatherData isGather(Annotation[] annos, int parameterIndex)
+    /**
+     * Offers the value to the given slots, all of which accept its class.
+     */
+    public void provide(int[] candidates, Object value, long authority)
     {
-        GatherData gd = new GatherData();
-        gd.gatherIndex = parameterIndex;
-        for (Annotation annotation : annos) {
-            if (annotation instanceof Gather) {
-                Class param_type = method.getParameterTypes()[parameterIndex];
-                if (!Collection.class.isAssignableFrom(param_type)) {
-                    throw new IllegalArgumentException("Can only @Gather against Collection");
+        for (int i : candidates) {
+            if (gathers[i] == null) {
+                if (offer(i, value, authority)) {
+                    return;
                 }
-
-                // I hate always having to do this
-                ParameterizedType gen_type = (ParameterizedType) method.getGenericParameterTypes()[parameterIndex];
-                gd.gatherType = (Class) gen_type.getActualTypeArguments()[0];
-                gd.isGather = true;
-                break;
+            }
+            else if (testParameterPredicates(value, i)) {
+                gather(i, value, authority);
             }
         }
-        return gd;
     }
 
-    public void provide(Class type, Object value, long authority)
+    private void gather(int i, Object value, long authority)
     {
-        for (int i = 0; i < types.length; i++) {
-            if (types[i].isAssignableFrom(type)
-                && authorities[i] <= authority
-                && testParameterPredicates(value, parameterTests.get(i)))
-            {
-                values[i] = value;
-                authorities[i] = authority;
-                return;
+        int size = gathers[i].add(value, authority);
+        if (size == GatherBuffer.REJECTED) {
+            return;
+        }
+        if (size != GatherBuffer.REPLACED && size == plan.getGatherMinimum(i)) {
+            missing.decrementAndGet();
+        }
+        version.incrementAndGet();
+    }
+
+    /**
+     * Stores the value in slot i unless a value of greater authority is already there.
+     */
+    private boolean offer(int i, Object value, long authority)
+    {
+        if (slots.get(i).authority > authority || !testParameterPredicates(value, i)) {
+            return false;
+        }
+        Slot displaced = store(slots, i, value, authority);
+        if (displaced == null) {
+            return false;
+        }
+        if (displaced.value == null) {
+            missing.decrementAndGet();
+        }
+        return true;
+    }
+
+    /**
+     * Offers a value provided under the given key to every keyed parameter with that key,
+     * returning true if any took it.
+     */
+    boolean provideKeyed(String key, Object value, long authority)
+    {
+        boolean taken = false;
+        for (int i : plan.getKeyedParameters()) {
+            int k = plan.getKeyIndex(i, key);
+            if (k < 0 || !plan.getKeyedType(i).isInstance(value) || keyed[i].get(k).authority > authority) {
+                continue;
+            }
+            if (!testParameterPredicates(value, i)) {
+                continue;
             }
+            Slot displaced = store(keyed[i], k, value, authority);
+            if (displaced == null) {
+                continue;
+            }
+            if (displaced.value == null && keysFilled[i].incrementAndGet() == plan.getKeyedMinimum(i)) {
+                missing.decrementAndGet();
+            }
+            taken = true;
+        }
+        return taken;
+    }
 
-            if (gatheredTypes[i] != null
-                && gatheredTypes[i].isAssignableFrom(type)
-                && testParameterPredicates(value, parameterTests.get(i)))
-            {
-                ((Collection) values[i]).add(value);
+    /**
+     * Swaps the value into the slot unless one of greater authority gets there first,
+     * returning the slot it displaced, or null.
+     */
+    private Slot store(AtomicReferenceArray<Slot> slots, int i, Object value, long authority)
+    {
+        Slot next = new Slot(value, authority);
+        Slot current;
+        do {
+            current = slots.get(i);
+            if (current.authority > authority) {
+                return null;
             }
         }
+        while (!slots.compareAndSet(i, current, next));
+        version.incrementAndGet();
+        return current;
     }
 
-    private boolean testParameterPredicates(Object value, Collection<Predicate> predicates)
+    private boolean testParameterPredicates(Object value, int i)
     {
-        for (Predicate predicate : predicates) {
-            if (!predicate.test(value)) {
+        List<Predicate> tests = parameterTests.get(i);
+        for (int g = 0; g < tests.size(); g++) {
+            int memoIndex = plan.getParameterGuards(i).get(g).getMemoIndex();
+            boolean passed = memoIndex < 0 ? tests.get(g).test(value) : memo.test(memoIndex, tests.get(g), value);
+            if (!passed) {
+                listener.guardRejected(plan.getPriority(), i);
                 return false;
             }
         }
         return true;
     }
 
+    int getPriority()
+    {
+        return plan.getPriority();
+    }
+
+    void setListener(TimeBoxListener listener)
+    {
+        this.listener = listener;
+    }
+
     public boolean isSatisfied()
     {
-        for (Object value : values) {
-            if (value == null) {
-                return false;
-            }
+        if (missing.get() > 0) {
+            return false;
+        }
+        return methodTests.isEmpty() || judge().args != null;
+    }
+
+    /**
+     * A consistent snapshot of the arguments if the reactor may run with them, else null.
+     */
+    Object[] satisfiedArguments()
+    {
+        if (missing.get() > 0) {
+            return null;
+        }
+        if (methodTests.isEmpty()) {
+            return snapshot();
+        }
+        return judge().args;
+    }
+
+    private Verdict judge()
+    {
+        long current = version.get();
+        Verdict last = verdict;
+        if (last != null && last.version == current) {
+            return last;
         }
+
+        Object[] args = snapshot();
         for (Predicate<Object[]> test : methodTests) {
-            if (!test.test(values)) {
-                return false;
+            if (!test.test(args)) {
+                listener.guardRejected(plan.getPriority(), -1);
+                args = null;
+                break;
             }
         }
-        return true;
+        last = new Verdict(current, args);
+        verdict = last;
+        return last;
     }
 
-    public T handle() throws InvocationTargetException, IllegalAccessException
+    private Object[] snapshot()
     {
-        method.invoke(target, values);
+        Object[] args = new Object[gathers.length];
+        for (int i = 0; i < args.length; i++) {
+            if (gathers[i] != null) {
+                args[i] = gathers[i].snapshot();
+            }
+            else if (keyed[i] != null) {
+                args[i] = keyedSnapshot(i);
+            }
+            else {
+                args[i] = slots.get(i).value;
+            }
+        }
+        return args;
+    }
+
+    private Map<String, Object> keyedSnapshot(int i)
+    {
+        String[] keys = plan.getKeys(i);
+        Map<String, Object> values = new LinkedHashMap<String, Object>();
+        for (int k = 0; k < keys.length; k++) {
+            Object value = keyed[i].get(k).value;
+            if (value != null) {
+                values.put(keys[k], value);
+            }
+        }
+        return values;
+    }
+
+    public T handle(Object[] args) throws InvocationTargetException, IllegalAccessException
+    {
+        plan.getInvoker().invoke(target, args);
         return target.getResult();
     }
+
+    /**
+     * Outcome of the method guards against the arguments as of some version.
+     */
+    private static final class Verdict
+    {
+        private final long version;
+        // null when the guards rejected the arguments
+        private final Object[] args;
+
+        Verdict(long version, Object[] args)
+        {
+            this.version = version;
+            this.args = args;
+        }
+    }
+
+    private static final class Slot
+    {
+        private final Object value;
+        private final long authority;
+
+        Slot(Object value, long authority)
+        {
+            this.value = value;
+            this.authority = authority;
+        }
+    }
 }
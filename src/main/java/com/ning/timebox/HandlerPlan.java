@@ -0,0 +1,515 @@
+package com.ning.timebox;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Everything about a reactor method which can be worked out once per class: parameter
+ * types, gathered element types, required authorities and the guard houses which will
+ * build predicates for each parameter. A {@link Handler} binds a plan to a target.
+ * Plans for reactors declared through {@link TimeBoxPlan#builder()} have no method.
+ */
+final class HandlerPlan
+{
+    private final int priority;
+    private final Method method;
+    private final Invoker invoker;
+    private final Class[] types;
+    private final long[] authorities;
+    private final List<GuardSpec> methodGuards;
+    private final List<List<GuardSpec>> parameterGuards;
+
+    // null means do not gather
+    private final Class[] gatheredTypes;
+    private final int[] gatherMinimums;
+    private final int[] gatherMaximums;
+    private final Gather.Overflow[] gatherOverflows;
+    // null means rank by authority
+    private final Comparator[] gatherComparators;
+
+    // null means not keyed
+    private final String[][] keys;
+    private final Class[] keyedTypes;
+    private final int[] keyedMinimums;
+    private final int[] keyedParameters;
+
+    HandlerPlan(Factory factory, GuardHouses houses, int priority, Method method)
+    {
+        this.priority = priority;
+        this.method = method;
+        this.invoker = Invoker.forMethod(method);
+        this.types = method.getParameterTypes();
+        this.authorities = new long[types.length];
+        this.gatheredTypes = new Class[types.length];
+        this.gatherMinimums = new int[types.length];
+        this.gatherMaximums = new int[types.length];
+        this.gatherOverflows = new Gather.Overflow[types.length];
+        this.gatherComparators = new Comparator[types.length];
+        this.keys = new String[types.length][];
+        this.keyedTypes = new Class[types.length];
+        this.keyedMinimums = new int[types.length];
+
+        List<GuardSpec> method_guards = new ArrayList<GuardSpec>();
+        for (Annotation annotation : method.getAnnotations()) {
+            GuardHouse house = houses.guardHouseFor(factory, annotation);
+            if (house != null) {
+                method_guards.add(new GuardSpec(house, annotation));
+            }
+        }
+        this.methodGuards = Collections.unmodifiableList(method_guards);
+
+        // now prefill authorities to required authority - 1,
+        // so that when needed authoity comes in, it is at higher
+        List<List<GuardSpec>> parameter_guards = new ArrayList<List<GuardSpec>>(types.length);
+        int[] keyed_parameters = new int[types.length];
+        int keyed_count = 0;
+        Annotation[][] param_annos = method.getParameterAnnotations();
+        for (int i = 0; i < param_annos.length; i++) {
+            // loop through each parameter
+            authorities[i] = Long.MIN_VALUE;
+            gatheredTypes[i] = gatherType(factory, param_annos[i], i);
+            keyedTypes[i] = keyedType(param_annos[i], i);
+            if (keyedTypes[i] != null) {
+                if (gatheredTypes[i] != null) {
+                    throw new IllegalArgumentException("A parameter cannot be both @Gather and @Keyed");
+                }
+                keyed_parameters[keyed_count++] = i;
+            }
+
+            // gathered and keyed parameters are guarded element by element
+            Class tested = gatheredTypes[i] != null ? gatheredTypes[i] : keyedTypes[i] != null ? keyedTypes[i] : types[i];
+            List<GuardSpec> guards = new ArrayList<GuardSpec>();
+            for (Annotation annotation : param_annos[i]) {
+                if (annotation instanceof Authority) {
+                    authorities[i] = ((Authority) annotation).value();
+                }
+
+                GuardHouse house = houses.guardHouseFor(factory, annotation);
+                if (house != null) {
+                    guards.add(new GuardSpec(house, annotation, houses.memoIndexFor(annotation, tested)));
+                }
+            }
+            parameter_guards.add(Collections.unmodifiableList(guards));
+        }
+        this.parameterGuards = Collections.unmodifiableList(parameter_guards);
+        this.keyedParameters = Arrays.copyOf(keyed_parameters, keyed_count);
+    }
+
+    /**
+     * A plan for a reactor declared through {@link TimeBoxPlan#builder()}, whose guards
+     * are ready-made predicates rather than annotations.
+     */
+    HandlerPlan(int priority, Reactor<?> reactor, List<TimeBoxPlan.Parameter> parameters, List<Predicate<Object[]>> guards)
+    {
+        int arity = parameters.size();
+        this.priority = priority;
+        this.method = null;
+        this.invoker = Invoker.forReactor(reactor);
+        this.types = new Class[arity];
+        this.authorities = new long[arity];
+        this.gatheredTypes = new Class[arity];
+        this.gatherMinimums = new int[arity];
+        this.gatherMaximums = new int[arity];
+        this.gatherOverflows = new Gather.Overflow[arity];
+        this.gatherComparators = new Comparator[arity];
+        this.keys = new String[arity][];
+        this.keyedTypes = new Class[arity];
+        this.keyedMinimums = new int[arity];
+
+        List<GuardSpec> method_guards = new ArrayList<GuardSpec>();
+        for (Predicate<Object[]> guard : guards) {
+            method_guards.add(new GuardSpec(guard));
+        }
+        this.methodGuards = Collections.unmodifiableList(method_guards);
+
+        List<List<GuardSpec>> parameter_guards = new ArrayList<List<GuardSpec>>(arity);
+        int[] keyed_parameters = new int[arity];
+        int keyed_count = 0;
+        for (int i = 0; i < arity; i++) {
+            TimeBoxPlan.Parameter parameter = parameters.get(i);
+            authorities[i] = parameter.authority;
+            switch (parameter.kind) {
+                case GATHER:
+                    checkGather(parameter.atLeast, parameter.atMost, parameter.overflow);
+                    types[i] = Collection.class;
+                    gatheredTypes[i] = parameter.type;
+                    gatherMinimums[i] = parameter.atLeast;
+                    gatherMaximums[i] = parameter.atMost;
+                    gatherOverflows[i] = parameter.overflow;
+                    gatherComparators[i] = parameter.comparator;
+                    break;
+                case KEYED:
+                    checkKeyed(parameter.keys, parameter.atLeast);
+                    types[i] = Map.class;
+                    keyedTypes[i] = parameter.type;
+                    keys[i] = parameter.keys.clone();
+                    keyedMinimums[i] = Math.min(parameter.atLeast, parameter.keys.length);
+                    keyed_parameters[keyed_count++] = i;
+                    break;
+                default:
+                    types[i] = parameter.type;
+            }
+
+            List<GuardSpec> specs = new ArrayList<GuardSpec>();
+            for (Predicate<Object> guard : parameter.guards) {
+                specs.add(new GuardSpec(guard));
+            }
+            parameter_guards.add(Collections.unmodifiableList(specs));
+        }
+        this.parameterGuards = Collections.unmodifiableList(parameter_guards);
+        this.keyedParameters = Arrays.copyOf(keyed_parameters, keyed_count);
+    }
+
+    private Class keyedType(Annotation[] annos, int parameterIndex)
+    {
+        for (Annotation annotation : annos) {
+            if (annotation instanceof Keyed) {
+                Keyed keyed = (Keyed) annotation;
+                checkKeyed(keyed.value(), keyed.atLeast());
+                keys[parameterIndex] = keyed.value().clone();
+                keyedMinimums[parameterIndex] = Math.min(keyed.atLeast(), keyed.value().length);
+
+                if (!types[parameterIndex].isAssignableFrom(Map.class)) {
+                    throw new IllegalArgumentException("Can only @Keyed against Map");
+                }
+                ParameterizedType gen_type = (ParameterizedType) method.getGenericParameterTypes()[parameterIndex];
+                if (gen_type.getActualTypeArguments()[0] != String.class) {
+                    throw new IllegalArgumentException("@Keyed maps must be keyed by String");
+                }
+                return (Class) gen_type.getActualTypeArguments()[1];
+            }
+        }
+        return null;
+    }
+
+    private Class gatherType(Factory factory, Annotation[] annos, int parameterIndex)
+    {
+        for (Annotation annotation : annos) {
+            if (annotation instanceof Gather) {
+                Gather gather = (Gather) annotation;
+                checkGather(gather.atLeast(), gather.atMost(), gather.overflow());
+                gatherMinimums[parameterIndex] = gather.atLeast();
+                gatherMaximums[parameterIndex] = gather.atMost();
+                gatherOverflows[parameterIndex] = gather.overflow();
+                if (gather.comparator() != Comparator.class) {
+                    try {
+                        gatherComparators[parameterIndex] = factory.instantiate(gather.comparator());
+                    }
+                    catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+
+                Class param_type = types[parameterIndex];
+                if (!Collection.class.isAssignableFrom(param_type)) {
+                    throw new IllegalArgumentException("Can only @Gather against Collection");
+                }
+
+                // I hate always having to do this
+                ParameterizedType gen_type = (ParameterizedType) method.getGenericParameterTypes()[parameterIndex];
+                return (Class) gen_type.getActualTypeArguments()[0];
+            }
+        }
+        return null;
+    }
+
+    private static void checkGather(int atLeast, int atMost, Gather.Overflow overflow)
+    {
+        if (atLeast < 0 || atLeast > atMost) {
+            throw new IllegalArgumentException("@Gather needs 0 <= atLeast <= atMost");
+        }
+        if (overflow != Gather.Overflow.DROP_NEWEST && atMost == Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("@Gather overflow policies need an atMost capacity");
+        }
+    }
+
+    private static void checkKeyed(String[] keys, int atLeast)
+    {
+        if (keys.length == 0) {
+            throw new IllegalArgumentException("@Keyed needs at least one key");
+        }
+        if (new HashSet<String>(Arrays.asList(keys)).size() != keys.length) {
+            throw new IllegalArgumentException("@Keyed keys must be distinct");
+        }
+        if (atLeast < 1) {
+            throw new IllegalArgumentException("@Keyed needs atLeast >= 1");
+        }
+    }
+
+    int getPriority()
+    {
+        return priority;
+    }
+
+    Method getMethod()
+    {
+        return method;
+    }
+
+    Invoker getInvoker()
+    {
+        return invoker;
+    }
+
+    int getArity()
+    {
+        return types.length;
+    }
+
+    Class getType(int index)
+    {
+        return types[index];
+    }
+
+    Class getGatheredType(int index)
+    {
+        return gatheredTypes[index];
+    }
+
+    boolean isGather(int index)
+    {
+        return gatheredTypes[index] != null;
+    }
+
+    /**
+     * How many values a gathered parameter needs before the reactor is satisfied.
+     */
+    int getGatherMinimum(int index)
+    {
+        return gatherMinimums[index];
+    }
+
+    /**
+     * How many values a gathered parameter will accept.
+     */
+    int getGatherMaximum(int index)
+    {
+        return gatherMaximums[index];
+    }
+
+    /**
+     * Fresh storage for a gathered parameter, sized and ordered as declared.
+     */
+    GatherBuffer newGatherBuffer(int index)
+    {
+        return GatherBuffer.create(gatherMaximums[index], gatherOverflows[index], gatherComparators[index]);
+    }
+
+    boolean isKeyed(int index)
+    {
+        return keyedTypes[index] != null;
+    }
+
+    /**
+     * Indexes of the keyed parameters.
+     */
+    int[] getKeyedParameters()
+    {
+        return keyedParameters;
+    }
+
+    Class getKeyedType(int index)
+    {
+        return keyedTypes[index];
+    }
+
+    String[] getKeys(int index)
+    {
+        return keys[index];
+    }
+
+    /**
+     * Position of the key among those of a keyed parameter, or -1.
+     */
+    int getKeyIndex(int index, String key)
+    {
+        String[] names = keys[index];
+        for (int k = 0; k < names.length; k++) {
+            if (names[k].equals(key)) {
+                return k;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * How many keys of a keyed parameter need values before the reactor is satisfied.
+     */
+    int getKeyedMinimum(int index)
+    {
+        return keyedMinimums[index];
+    }
+
+    long getRequiredAuthority(int index)
+    {
+        return authorities[index];
+    }
+
+    List<GuardSpec> getMethodGuards()
+    {
+        return methodGuards;
+    }
+
+    List<GuardSpec> getParameterGuards(int index)
+    {
+        return parameterGuards.get(index);
+    }
+
+    /**
+     * A guard annotation paired with the (shared) guard house which understands it, or
+     * for a built plan, a ready-made predicate.
+     */
+    static final class GuardSpec
+    {
+        private final GuardHouse house;
+        private final Annotation annotation;
+        private final Predicate predicate;
+        private final int memoIndex;
+
+        GuardSpec(GuardHouse house, Annotation annotation)
+        {
+            this(house, annotation, -1);
+        }
+
+        GuardSpec(GuardHouse house, Annotation annotation, int memoIndex)
+        {
+            this.house = house;
+            this.annotation = annotation;
+            this.predicate = null;
+            this.memoIndex = memoIndex;
+        }
+
+        GuardSpec(Predicate predicate)
+        {
+            this.house = null;
+            this.annotation = null;
+            this.predicate = predicate;
+            this.memoIndex = -1;
+        }
+
+        @SuppressWarnings("unchecked")
+        Predicate<Object[]> buildMethodPredicate(Object target, Method method)
+        {
+            if (predicate != null) {
+                return predicate;
+            }
+            return house.buildMethodPredicate(annotation, target, method);
+        }
+
+        @SuppressWarnings("unchecked")
+        Predicate<Object> buildArgumentPredicate(Object target, Method method, int index)
+        {
+            if (predicate != null) {
+                return predicate;
+            }
+            return house.buildArgumentPredicate(annotation, target, method, index);
+        }
+
+        @SuppressWarnings("unchecked")
+        Predicate<Object> buildGatherPredicate(Object target, Method method, Class expectedType, int index)
+        {
+            if (predicate != null) {
+                return predicate;
+            }
+            return house.buildGatherPredicate(annotation, target, method, expectedType, index);
+        }
+
+        /**
+         * Index of this guard's results in a box's {@link GuardMemo}, or -1 if the guard
+         * is not pure.
+         */
+        int getMemoIndex()
+        {
+            return memoIndex;
+        }
+    }
+
+    /**
+     * Guard houses are instantiated once per plan and reused by every handler in it;
+     * {@link Guard} annotations are handled by a house of our own. Pure guards are
+     * numbered here too, so that the same guard on the same type of value shares
+     * memoized results across reactors.
+     */
+    static final class GuardHouses
+    {
+        private final Map<Class<? extends GuardHouse>, GuardHouse> houses =
+            new HashMap<Class<? extends GuardHouse>, GuardHouse>();
+        private final Map<List<Object>, Integer> pure = new HashMap<List<Object>, Integer>();
+        private PredicateGuardHouse predicates;
+
+        /**
+         * The memo index of a guard testing values of the given type, or -1 if the guard
+         * is not declared pure.
+         */
+        int memoIndexFor(Annotation annotation, Class tested)
+        {
+            if (!isPure(annotation)) {
+                return -1;
+            }
+            List<Object> key = Arrays.<Object>asList(annotation, tested);
+            Integer index = pure.get(key);
+            if (index == null) {
+                index = pure.size();
+                pure.put(key, index);
+            }
+            return index;
+        }
+
+        int getPureGuardCount()
+        {
+            return pure.size();
+        }
+
+        private static boolean isPure(Annotation annotation)
+        {
+            try {
+                Method pure = annotation.annotationType().getMethod("pure");
+                return pure.getReturnType() == boolean.class && (Boolean) pure.invoke(annotation);
+            }
+            catch (NoSuchMethodException e) {
+                return false;
+            }
+            catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        GuardHouse guardHouseFor(Factory factory, Annotation annotation)
+        {
+            if (annotation instanceof Guard) {
+                if (predicates == null) {
+                    predicates = new PredicateGuardHouse(factory);
+                }
+                predicates.validate((Guard) annotation);
+                return predicates;
+            }
+
+            Class<? extends Annotation> type = annotation.annotationType();
+            if (!type.isAnnotationPresent(GuardAnnotation.class)) {
+                return null;
+            }
+            Class<? extends GuardHouse> house_type = type.getAnnotation(GuardAnnotation.class).value();
+            GuardHouse house = houses.get(house_type);
+            if (house == null) {
+                try {
+                    house = factory.instantiate(house_type);
+                }
+                catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+                houses.put(house_type, house);
+            }
+            return house;
+        }
+    }
+}
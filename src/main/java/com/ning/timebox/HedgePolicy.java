@@ -0,0 +1,77 @@
+package com.ning.timebox;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides how long {@link TimeBox#hedging} waits for an attempt before launching the
+ * next backup. A policy may be shared by many boxes; percentile policies learn from the
+ * latencies of every successful attempt made under them.
+ */
+public abstract class HedgePolicy
+{
+    /**
+     * Delay before the next backup is launched.
+     */
+    public abstract long getDelayNanos();
+
+    /**
+     * Called with the latency of each attempt which produced a value.
+     */
+    public void record(long nanos)
+    {
+    }
+
+    /**
+     * Launch each backup after a fixed delay.
+     */
+    public static HedgePolicy fixed(long delay, TimeUnit unit)
+    {
+        final long nanos = unit.toNanos(delay);
+        return new HedgePolicy()
+        {
+            public long getDelayNanos()
+            {
+                return nanos;
+            }
+        };
+    }
+
+    /**
+     * Launch a backup once an attempt has taken longer than the given percentile (say 95)
+     * of observed attempt latencies. Until enough latencies have been seen, the initial
+     * delay is used.
+     */
+    public static HedgePolicy percentile(final double percentile, long initialDelay, TimeUnit unit)
+    {
+        return new PercentilePolicy(percentile, unit.toNanos(initialDelay));
+    }
+
+    private static final class PercentilePolicy extends HedgePolicy
+    {
+        private static final int MINIMUM_SAMPLES = 20;
+
+        private final Histogram latencies = new Histogram();
+        private final double percentile;
+        private final long initialDelay;
+
+        PercentilePolicy(double percentile, long initialDelay)
+        {
+            this.percentile = percentile;
+            this.initialDelay = initialDelay;
+        }
+
+        public long getDelayNanos()
+        {
+            if (latencies.getCount() < MINIMUM_SAMPLES) {
+                return initialDelay;
+            }
+            return latencies.getValueAtPercentile(percentile);
+        }
+
+        @Override
+        public void record(long nanos)
+        {
+            latencies.record(nanos);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.ning.timebox;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Aggregates the events of any number of boxes into histograms and counters. One
+ * instance is typically shared by every box serving the same kind of request.
+ */
+public class HistogramTimeBoxListener implements TimeBoxListener
+{
+    private final Histogram timeToFirstProvide = new Histogram();
+    private final Histogram timeToTopPriority = new Histogram();
+    private final Histogram timeToReaction = new Histogram();
+    private final Histogram providerLatency = new Histogram();
+    private final ConcurrentMap<Integer, AtomicLong> reactions = new ConcurrentHashMap<Integer, AtomicLong>();
+    private final AtomicLong unmatched = new AtomicLong();
+    private final AtomicLong failedProviders = new AtomicLong();
+    private final AtomicLong cancelledFutures = new AtomicLong();
+    private final AtomicLong guardRejections = new AtomicLong();
+
+    public void firstProvided(long nanos)
+    {
+        timeToFirstProvide.record(nanos);
+    }
+
+    public void topPrioritySatisfied(long nanos)
+    {
+        timeToTopPriority.record(nanos);
+    }
+
+    public void reacted(int priority, long nanos)
+    {
+        timeToReaction.record(nanos);
+        AtomicLong count = reactions.get(priority);
+        if (count == null) {
+            AtomicLong existing = reactions.putIfAbsent(priority, count = new AtomicLong());
+            if (existing != null) {
+                count = existing;
+            }
+        }
+        count.incrementAndGet();
+    }
+
+    public void unmatched(long nanos)
+    {
+        timeToReaction.record(nanos);
+        unmatched.incrementAndGet();
+    }
+
+    public void providerCompleted(long nanos, boolean failed)
+    {
+        providerLatency.record(nanos);
+        if (failed) {
+            failedProviders.incrementAndGet();
+        }
+    }
+
+    public void futuresCancelled(int count)
+    {
+        cancelledFutures.addAndGet(count);
+    }
+
+    public void guardRejected(int priority, int parameter)
+    {
+        guardRejections.incrementAndGet();
+    }
+
+    public Histogram getTimeToFirstProvide()
+    {
+        return timeToFirstProvide;
+    }
+
+    public Histogram getTimeToTopPriority()
+    {
+        return timeToTopPriority;
+    }
+
+    public Histogram getTimeToReaction()
+    {
+        return timeToReaction;
+    }
+
+    public Histogram getProviderLatency()
+    {
+        return providerLatency;
+    }
+
+    /**
+     * How many times the reactor with the given priority was chosen.
+     */
+    public long getReactions(int priority)
+    {
+        AtomicLong count = reactions.get(priority);
+        return count == null ? 0 : count.get();
+    }
+
+    public long getUnmatched()
+    {
+        return unmatched.get();
+    }
+
+    public long getFailedProviders()
+    {
+        return failedProviders.get();
+    }
+
+    public long getCancelledFutures()
+    {
+        return cancelledFutures.get();
+    }
+
+    public long getGuardRejections()
+    {
+        return guardRejections.get();
+    }
+}
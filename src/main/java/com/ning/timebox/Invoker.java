@@ -0,0 +1,118 @@
+package com.ning.timebox;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Calls a reactor. Reactor methods are bound to method handles once per class, falling
+ * back to plain reflection when the method cannot be made accessible. Failures of the
+ * reactor itself are reported as {@link InvocationTargetException}, just as
+ * {@link Method#invoke} would.
+ *
+ * @see GuardInvoker
+ */
+abstract class Invoker
+{
+    static Invoker forMethod(Method method)
+    {
+        MethodHandle handle = handleFor(method);
+        if (handle == null) {
+            return new ReflectiveInvoker(method);
+        }
+        return new MethodHandleInvoker(method, handle);
+    }
+
+    /**
+     * An invoker for a built plan's reactor, which records what the reactor returns as
+     * the result of the target {@link Tesseract}.
+     */
+    static Invoker forReactor(Reactor<?> reactor)
+    {
+        return new ReactorInvoker(reactor);
+    }
+
+    /**
+     * A method handle for the method, or null if it cannot be made accessible.
+     */
+    static MethodHandle handleFor(Method method)
+    {
+        try {
+            method.setAccessible(true);
+            return MethodHandles.lookup().unreflect(method);
+        }
+        catch (IllegalAccessException e) {
+            return null;
+        }
+        catch (RuntimeException e) {
+            // SecurityException, or module encapsulation on newer runtimes
+            return null;
+        }
+    }
+
+    abstract Object invoke(Object target, Object[] args) throws InvocationTargetException, IllegalAccessException;
+
+    private static final class MethodHandleInvoker extends Invoker
+    {
+        private final MethodHandle spread;
+
+        MethodHandleInvoker(Method method, MethodHandle handle)
+        {
+            int arity = method.getParameterTypes().length;
+            this.spread = handle.asType(handle.type().changeParameterType(0, Object.class))
+                                .asSpreader(Object[].class, arity)
+                                .asType(MethodType.methodType(Object.class, Object.class, Object[].class));
+        }
+
+        Object invoke(Object target, Object[] args) throws InvocationTargetException
+        {
+            try {
+                return (Object) spread.invokeExact(target, args);
+            }
+            catch (Throwable e) {
+                throw new InvocationTargetException(e);
+            }
+        }
+    }
+
+    private static final class ReflectiveInvoker extends Invoker
+    {
+        private final Method method;
+
+        ReflectiveInvoker(Method method)
+        {
+            this.method = method;
+        }
+
+        Object invoke(Object target, Object[] args) throws InvocationTargetException, IllegalAccessException
+        {
+            return method.invoke(target, args);
+        }
+    }
+
+    private static final class ReactorInvoker extends Invoker
+    {
+        private final Reactor<?> reactor;
+
+        ReactorInvoker(Reactor<?> reactor)
+        {
+            this.reactor = reactor;
+        }
+
+        @SuppressWarnings("unchecked")
+        Object invoke(Object target, Object[] args) throws InvocationTargetException
+        {
+            Object result;
+            try {
+                result = reactor.react(args);
+            }
+            catch (Exception e) {
+                throw new InvocationTargetException(e);
+            }
+            ((Tesseract<Object>) target).setResult(result);
+            return result;
+        }
+    }
+}
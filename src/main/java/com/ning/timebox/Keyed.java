@@ -0,0 +1,25 @@
+package com.ning.timebox;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+/**
+ * Marks a Map&lt;String, V&gt; reactor parameter as made up of named values, each
+ * provided with {@link TimeBox#provideKeyed}, as when one request is scattered across
+ * shards. Each key holds one value and tracks its own authority, just as an ordinary
+ * parameter does; keyed parameters are never filled by {@link TimeBox#provide}.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Keyed
+{
+    /**
+     * The keys this parameter is made up of.
+     */
+    String[] value();
+
+    /**
+     * How many of the keys need values before the reactor is satisfied; all of them
+     * unless given. The map passed to the reactor holds only the keys with values.
+     */
+    int atLeast() default Integer.MAX_VALUE;
+}
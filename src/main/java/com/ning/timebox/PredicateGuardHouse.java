@@ -0,0 +1,96 @@
+package com.ning.timebox;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static java.lang.String.format;
+
+/**
+ * Builds predicates for {@link Guard} annotations. Unlike other guard houses it needs the
+ * plan's {@link Factory}, so {@link HandlerPlan.GuardHouses} creates it directly; each
+ * predicate class is instantiated once and shared by every box using the plan.
+ */
+final class PredicateGuardHouse implements GuardHouse
+{
+    private final Factory factory;
+    private final ConcurrentMap<Class<?>, Predicate> predicates = new ConcurrentHashMap<Class<?>, Predicate>();
+
+    PredicateGuardHouse(Factory factory)
+    {
+        this.factory = factory;
+    }
+
+    /**
+     * Instantiates the guard's predicate ahead of any box being built, failing on a class
+     * which is not a predicate.
+     */
+    void validate(Guard guard)
+    {
+        predicateFor(guard);
+    }
+
+    public Predicate<Object[]> buildMethodPredicate(Annotation a, Object handler, Method m)
+    {
+        return predicateFor((Guard) a);
+    }
+
+    public Predicate<Object> buildArgumentPredicate(Annotation a, Object handler, Method m, int argumentIndex)
+    {
+        return predicateFor((Guard) a);
+    }
+
+    public Predicate<Object> buildGatherPredicate(Annotation a,
+                                                  Object handler,
+                                                  Method m,
+                                                  Class expectedType,
+                                                  int argumentIndex)
+    {
+        return predicateFor((Guard) a);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Predicate predicateFor(Guard guard)
+    {
+        Class<?> type = guard.value();
+        Predicate predicate = predicates.get(type);
+        if (predicate == null) {
+            predicate = adapt(instantiate(type));
+            Predicate existing = predicates.putIfAbsent(type, predicate);
+            if (existing != null) {
+                predicate = existing;
+            }
+        }
+        return predicate;
+    }
+
+    private Object instantiate(Class<?> type)
+    {
+        if (!Predicate.class.isAssignableFrom(type) && !java.util.function.Predicate.class.isAssignableFrom(type)) {
+            throw new IllegalArgumentException(format("@Guard(%s) is not a predicate", type.getName()));
+        }
+        try {
+            return factory.instantiate(type);
+        }
+        catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Predicate adapt(Object instance)
+    {
+        if (instance instanceof Predicate) {
+            return (Predicate) instance;
+        }
+        final java.util.function.Predicate<Object> predicate = (java.util.function.Predicate<Object>) instance;
+        return new Predicate<Object>()
+        {
+            public boolean test(Object arg)
+            {
+                return predicate.test(arg);
+            }
+        };
+    }
+}
@@ -0,0 +1,10 @@
+package com.ning.timebox;
+
+/**
+ * A reactor declared through {@link TimeBoxPlan#builder()}: called with its arguments,
+ * in the order its parameters were declared, and returning the box's result.
+ */
+public interface Reactor<T>
+{
+    T react(Object[] arguments) throws Exception;
+}
@@ -0,0 +1,20 @@
+package com.ning.timebox;
+
+/**
+ * Told when each reactor of a box first becomes satisfied, so that "good enough"
+ * results can be acted on while the box goes on waiting for better ones. Which reactor
+ * finally runs is still decided by react().
+ * <p>
+ * Callbacks happen inline on whichever thread provided the value which satisfied the
+ * reactor, so should be quick.
+ *
+ * @see TimeBox#onSatisfied(SatisfactionListener)
+ */
+public interface SatisfactionListener
+{
+    /**
+     * @param priority  the satisfied reactor's priority
+     * @param arguments a copy of the arguments it would be run with now
+     */
+    void satisfied(int priority, Object[] arguments);
+}
@@ -12,4 +12,8 @@ public class Tesseract<T> {
         return result;
     }
 
+    synchronized void clearResult() {
+        this.result = null;
+    }
+
 }
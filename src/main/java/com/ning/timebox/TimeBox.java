@@ -1,61 +1,96 @@
 package com.ning.timebox;
 
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
 import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.Map;
-import java.util.SortedMap;
-import java.util.TreeMap;
+import java.util.Collection;
+import java.util.List;
 import java.util.Vector;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
-
-import static java.lang.String.format;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 public class TimeBox<T>
 {
-    private final SortedMap<Integer, Handler<T>> handlers = new TreeMap<Integer, Handler<T>>(new Comparator<Integer>()
-    {
-        public int compare(Integer first, Integer second)
-        {
-            return first.compareTo(second) * -1;
-        }
-    });
+    // reactors in descending priority order
+    private final List<Handler<T>> handlers;
+    private final BoxPlan plan;
 
     private final Semaphore flag = new Semaphore(0);
-    private final int highestPriority;
-    private final ExecutorService service;
+    private final ExecutionContext context;
     private final Vector<Future<?>> outstandingFutures = new Vector<Future<?>>();
+    // timers launching hedge backups, which are not providers and so not counted as cancelled
+    private final Vector<Future<?>> hedgeTimers = new Vector<Future<?>>();
+    private volatile AsyncReaction pending;
+
+    // providing() callables submitted, and those not yet finished
+    private final AtomicInteger providers = new AtomicInteger();
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private volatile boolean reacting = false;
+    // bumped by reset() so that providers from an earlier round are ignored
+    private volatile int round = 0;
+    private volatile Deadline deadline = new Deadline();
+
+    private volatile long created = System.nanoTime();
+    private final AtomicBoolean provided = new AtomicBoolean();
+    private final AtomicBoolean topSatisfied = new AtomicBoolean();
+    private volatile TimeBoxListener listener = TimeBoxListener.NONE;
+    private volatile SatisfactionListener onSatisfied;
+    private volatile Executor guardExecutor;
+    // reactors which onSatisfied has been told about, by index into handlers
+    private final AtomicIntegerArray announced;
+    private final GuardMemo memo;
 
     public TimeBox(Factory factory, Tesseract<T> handler) {
-    	this(Executors.newCachedThreadPool(), factory, handler);
+    	this(ExecutionContext.shared(), factory, handler);
     }
-	
+
     public TimeBox(ExecutorService service, Factory factory, Tesseract<T> handler)
     {
-        this.service = service;
-        int hp = Integer.MIN_VALUE;
-        final Method[] methods = handler.getClass().getDeclaredMethods();
-        for (Method method : methods) {
-            if (Modifier.isPublic(method.getModifiers()) && method.isAnnotationPresent(Priority.class)) {
-                int priority = method.getAnnotation(Priority.class).value();
-                if (priority > hp) {
-                    hp = priority;
-                }
-                Handler<T> h = new Handler<T>(factory, handler, method);
-                if (handlers.containsKey(priority)) {
-                    throw new IllegalArgumentException(format("multiple reactor methods have priority %d", priority));
-                }
-                handlers.put(priority, h);
-            }
+        this(new ExecutionContext(service, ExecutionContext.shared().getTimer()), factory, handler);
+    }
+
+    public TimeBox(ExecutionContext context, Factory factory, Tesseract<T> handler)
+    {
+        this(context, BoxPlan.forClass(factory, handler.getClass()), handler);
+    }
+
+    /**
+     * A box running reactors declared through {@link TimeBoxPlan#builder()}.
+     */
+    public TimeBox(TimeBoxPlan<T> plan)
+    {
+        this(ExecutionContext.shared(), plan);
+    }
+
+    public TimeBox(ExecutionContext context, TimeBoxPlan<T> plan)
+    {
+        // built reactors return their results, which are recorded on a private tesseract
+        this(context, plan.getPlan(), new Tesseract<T>());
+    }
+
+    private TimeBox(ExecutionContext context, BoxPlan plan, Tesseract<T> handler)
+    {
+        this.context = context;
+        this.plan = plan;
+        List<HandlerPlan> plans = plan.getHandlers();
+        this.handlers = new ArrayList<Handler<T>>(plans.size());
+        this.announced = new AtomicIntegerArray(plans.size());
+        this.memo = new GuardMemo(plan.getPureGuardCount());
+        for (HandlerPlan reactor : plans) {
+            handlers.add(new Handler<T>(reactor, handler, memo));
         }
-        highestPriority = hp;
     }
 
     public TimeBox(Tesseract<T> handler)
@@ -63,80 +98,790 @@ public class TimeBox<T>
         this(new DefaultFactory(), handler);
     }
 
-    public synchronized void provide(Object value)
+    public void provide(Object value)
     {
         provide(value, 0);
     }
 
-    public synchronized void provide(Object value, int authority)
+    public void provide(final Object value, final int authority)
     {
         assert authority > Long.MIN_VALUE;
 
-        final Class<?> type = value.getClass();
-        for (Map.Entry<Integer, Handler<T>> entry : handlers.entrySet()) {
-            entry.getValue().provide(type, value, authority);
-            if (entry.getKey() == highestPriority && entry.getValue().isSatisfied()) {
-                flag.release();
-                return; // we satisfied highest priority, short circuit
+        if (guardExecutor != null) {
+            handOff(new Runnable()
+            {
+                public void run()
+                {
+                    dispatch(value, authority);
+                }
+            });
+            return;
+        }
+        dispatch(value, authority);
+    }
+
+    private void dispatch(Object value, int authority)
+    {
+        noteProvided();
+        if (handlers.isEmpty()) {
+            return;
+        }
+
+        final BoxPlan.Route[] routes = plan.routesFor(value.getClass());
+        int r = 0;
+        if (routes.length > 0 && routes[0].getHandler() == 0) {
+            handlers.get(0).provide(routes[0].getSlots(), value, authority);
+            announce(0);
+            r = 1;
+        }
+        if (handlers.get(0).isSatisfied()) {
+            topSatisfied();
+            return; // we satisfied highest priority, short circuit
+        }
+        for (; r < routes.length; r++) {
+            handlers.get(routes[r].getHandler()).provide(routes[r].getSlots(), value, authority);
+            announce(routes[r].getHandler());
+        }
+    }
+
+    public void provideAll(Collection<?> values)
+    {
+        provideAll(values, 0);
+    }
+
+    /**
+     * Provides each of the values, all with the same authority. The values are offered
+     * to every reactor which accepts them, and whether the highest priority reactor is
+     * satisfied is only checked once, after the last of them.
+     */
+    public void provideAll(final Collection<?> values, final int authority)
+    {
+        if (guardExecutor != null) {
+            handOff(new Runnable()
+            {
+                public void run()
+                {
+                    dispatchAll(values, authority);
+                }
+            });
+            return;
+        }
+        dispatchAll(values, authority);
+    }
+
+    private void dispatchAll(Collection<?> values, int authority)
+    {
+        noteProvided();
+        if (handlers.isEmpty() || values.isEmpty()) {
+            return;
+        }
+
+        Class<?> type = null;
+        BoxPlan.Route[] routes = null;
+        for (Object value : values) {
+            if (value.getClass() != type) {
+                type = value.getClass();
+                routes = plan.routesFor(type);
+            }
+            for (BoxPlan.Route route : routes) {
+                handlers.get(route.getHandler()).provide(route.getSlots(), value, authority);
+                announce(route.getHandler());
+            }
+        }
+        if (handlers.get(0).isSatisfied()) {
+            topSatisfied();
+        }
+    }
+
+    public void provideKeyed(String key, Object value)
+    {
+        provideKeyed(key, value, 0);
+    }
+
+    /**
+     * Provides the value under the given key to the {@link Keyed} parameters declaring
+     * that key.
+     */
+    public void provideKeyed(final String key, final Object value, final int authority)
+    {
+        if (guardExecutor != null) {
+            handOff(new Runnable()
+            {
+                public void run()
+                {
+                    dispatchKeyed(key, value, authority);
+                }
+            });
+            return;
+        }
+        dispatchKeyed(key, value, authority);
+    }
+
+    private void dispatchKeyed(String key, Object value, int authority)
+    {
+        noteProvided();
+        if (handlers.isEmpty()) {
+            return;
+        }
+
+        if (handlers.get(0).provideKeyed(key, value, authority)) {
+            announce(0);
+        }
+        if (handlers.get(0).isSatisfied()) {
+            topSatisfied();
+            return;
+        }
+        for (int h = 1; h < handlers.size(); h++) {
+            if (handlers.get(h).provideKeyed(key, value, authority)) {
+                announce(h);
             }
         }
     }
 
+    /**
+     * Runs a dispatch on the guard executor. It counts as outstanding work until done,
+     * so that a box waiting on its providers also waits for their values to be judged.
+     */
+    private void handOff(final Runnable dispatch)
+    {
+        final int round = this.round;
+        outstanding.incrementAndGet();
+        try {
+            guardExecutor.execute(new Runnable()
+            {
+                public void run()
+                {
+                    try {
+                        if (round == TimeBox.this.round) {
+                            dispatch.run();
+                        }
+                    }
+                    finally {
+                        providerFinished(round);
+                    }
+                }
+            });
+        }
+        catch (RejectedExecutionException e) {
+            providerFinished(round);
+            throw e;
+        }
+    }
+
+    private void noteProvided()
+    {
+        if (listener != TimeBoxListener.NONE && provided.compareAndSet(false, true)) {
+            listener.firstProvided(System.nanoTime() - created);
+        }
+    }
+
+    private void topSatisfied()
+    {
+        if (listener != TimeBoxListener.NONE && topSatisfied.compareAndSet(false, true)) {
+            listener.topPrioritySatisfied(System.nanoTime() - created);
+        }
+        wake();
+    }
+
+    /**
+     * Tells onSatisfied, once, that the reactor at the given index has been satisfied.
+     */
+    private void announce(int index)
+    {
+        SatisfactionListener target = onSatisfied;
+        if (target == null || announced.get(index) != 0) {
+            return;
+        }
+        Handler<T> handler = handlers.get(index);
+        Object[] args = handler.satisfiedArguments();
+        if (args != null && announced.compareAndSet(index, 0, 1)) {
+            target.satisfied(handler.getPriority(), args);
+        }
+    }
+
     public TimeBox<T> providing(final Callable<?> callable)
     {
         return providing(callable, 0);
     }
 
-    public TimeBox<T> providing(final Callable<?> callable, final int authority)
+    /**
+     * Runs the callable on this box's execution context and provides its result.
+     * <p>
+     * Once every callable handed to a box has finished nothing further can be provided
+     * by them, so a box which is reacting stops waiting at that point and runs the best
+     * satisfied reactor. Values provided directly from other threads are not tracked, so
+     * a box fed that way as well should not rely on waiting out its deadline.
+     */
+    public TimeBox<T> providing(Callable<?> callable, int authority)
+    {
+        return submit(callable, authority, false);
+    }
+
+    public TimeBox<T> providingAll(Callable<? extends Collection<?>> callable)
+    {
+        return providingAll(callable, 0);
+    }
+
+    /**
+     * Like {@link #providing(Callable, int)}, but for a callable producing many values at
+     * once, which are handed to {@link #provideAll(Collection, int)}.
+     */
+    public TimeBox<T> providingAll(Callable<? extends Collection<?>> callable, int authority)
+    {
+        return submit(callable, authority, true);
+    }
+
+    private TimeBox<T> submit(final Callable<?> callable, final int authority, final boolean batch)
     {
-        outstandingFutures.add(service.submit(new Runnable() {
+        final long submitted = System.nanoTime();
+        final int round = this.round;
+        Runnable provider = new Runnable() {
             @Override
             public void run()
             {
+                boolean failed = true;
                 try {
-                    provide(callable.call(), authority);
+                    Object value = callable.call();
+                    if (round == TimeBox.this.round) {
+                        if (batch) {
+                            provideAll((Collection<?>) value, authority);
+                        }
+                        else {
+                            provide(value, authority);
+                        }
+                    }
+                    failed = false;
                 } catch (Exception e) {
                     throw new RuntimeException(e);
+                } finally {
+                    listener.providerCompleted(System.nanoTime() - submitted, failed);
+                    providerFinished(round);
                 }
             }
-        }));
+        };
+
+        // outstanding first, so that no one sees every provider finished in between
+        outstanding.incrementAndGet();
+        providers.incrementAndGet();
+        try {
+            outstandingFutures.add(execute(provider));
+        }
+        catch (RejectedExecutionException e) {
+            unsubmitted();
+            throw e;
+        }
         return this;
     }
 
-    public T react(long number, TimeUnit unit) throws InterruptedException, InvocationTargetException, IllegalAccessException
+    /**
+     * Takes back the counts for a provider the executor would not run.
+     */
+    private void unsubmitted()
+    {
+        providers.decrementAndGet();
+        outstanding.decrementAndGet();
+    }
+
+    /**
+     * Runs a provider on the context's executor, as a task which cleanUpFutures() will not
+     * interrupt from its own thread.
+     */
+    private Future<?> execute(Runnable provider)
+    {
+        ProviderTask task = new ProviderTask(provider);
+        context.getExecutor().execute(task);
+        return task;
+    }
+
+    public TimeBox<T> providing(DeadlineCallable<?> callable)
+    {
+        return providing(callable, 0);
+    }
+
+    /**
+     * Like {@link #providing(Callable, int)}, but the callable is given this box's
+     * {@link Deadline} so it can budget its own work. Providers are still interrupted if
+     * running when the box reacts, but the deadline has expired by then. A value the
+     * callable returns once its deadline has expired is dropped, and the provider is
+     * counted as failed, so a provider honouring the deadline cannot change the outcome
+     * of a box which has already reacted.
+     */
+    public TimeBox<T> providing(final DeadlineCallable<?> callable, int authority)
     {
-        if (flag.tryAcquire(number, unit)) {
-            // flag will only be avail *if* highest priority handler is triggered
-            for (Handler<T> handler : handlers.values()) {
-                if (handler.isSatisfied()) {
-                    T result = handler.handle();
-                    cleanUpFutures();
-                    return result; // satisfied highest priority so short circuit and return
+        final Deadline deadline = this.deadline;
+        return providing(new Callable<Object>()
+        {
+            public Object call() throws Exception
+            {
+                Object value = callable.call(deadline);
+                if (deadline.isExpired()) {
+                    throw new TimeoutException("provider finished after its deadline");
                 }
+                return value;
+            }
+        }, authority);
+    }
+
+    /**
+     * Sets the deadline seen by {@link DeadlineCallable} providers ahead of calling
+     * react(), which would otherwise set it. Reacting with a shorter time limit than this
+     * brings the deadline forward.
+     */
+    public TimeBox<T> deadline(long number, TimeUnit unit)
+    {
+        deadline.limit(number, unit);
+        return this;
+    }
+
+    public TimeBox<T> hedging(HedgePolicy policy, Callable<?> primary, Callable<?>... backups)
+    {
+        return hedging(policy, 0, primary, backups);
+    }
+
+    /**
+     * Runs the primary callable, and launches the backups one at a time, each after the
+     * delay chosen by the policy or as soon as the latest attempt fails, for as long as no
+     * attempt has produced a value. The first non-null value is provided and every other
+     * attempt is cancelled. Counts as a single provider for the purposes of
+     * {@link #providing}.
+     */
+    public TimeBox<T> hedging(HedgePolicy policy, int authority, Callable<?> primary, Callable<?>... backups)
+    {
+        Callable<?>[] attempts = new Callable<?>[backups.length + 1];
+        attempts[0] = primary;
+        System.arraycopy(backups, 0, attempts, 1, backups.length);
+
+        outstanding.incrementAndGet();
+        providers.incrementAndGet();
+        try {
+            new Hedge(policy, authority, attempts, round).launch(0);
+        }
+        catch (RejectedExecutionException e) {
+            unsubmitted();
+            throw e;
+        }
+        return this;
+    }
+
+    /**
+     * Reports this box's timings and outcomes to the given listener. Set it before
+     * providing values so that no events are missed.
+     */
+    public TimeBox<T> instrumented(TimeBoxListener listener)
+    {
+        this.listener = listener;
+        for (Handler<T> handler : handlers) {
+            handler.setListener(listener);
+        }
+        return this;
+    }
+
+    /**
+     * Tests provided values against guards, and stores them, on the given executor rather
+     * than on the providing thread, so that slow guards (scripts, say) do not hold up
+     * providers. Values may then be judged in any order, but a value never displaces one
+     * of greater authority. Set it before providing values.
+     */
+    public TimeBox<T> guardingOn(Executor executor)
+    {
+        this.guardExecutor = executor;
+        return this;
+    }
+
+    /**
+     * Reports each reactor, as it first becomes satisfied, to the given listener. Set it
+     * before providing values so that no reactor is missed.
+     */
+    public TimeBox<T> onSatisfied(SatisfactionListener listener)
+    {
+        this.onSatisfied = listener;
+        return this;
+    }
+
+    public T react(long number, TimeUnit unit) throws InterruptedException, InvocationTargetException, IllegalAccessException
+    {
+        // flag will only be avail *if* highest priority handler is triggered or every
+        // provider is done, either way we run the best satisfied handler
+        reacting = true;
+        deadline.limit(number, unit);
+        if (!providersFinished()) {
+            flag.tryAcquire(number, unit);
+        }
+        return fire();
+    }
+
+    /**
+     * Like {@link #react(long, TimeUnit)}, but without parking the calling thread. The
+     * returned future completes as soon as the highest priority reactor is satisfied, or
+     * when the time limit passes, with the result of the best satisfied reactor (or null
+     * if none was). It also completes early once every {@link #providing} callable has
+     * finished. The reactor runs, and outstanding providers are cancelled, on whichever
+     * thread triggered completion: a providing thread or the context's timer. So that
+     * dependent stages hold up neither, the future is then completed on the common
+     * fork-join pool, which is also where CompletableFuture runs its *Async stages.
+     */
+    public CompletableFuture<T> reactAsync(long number, TimeUnit unit)
+    {
+        final AsyncReaction reaction = new AsyncReaction();
+        pending = reaction;
+        reacting = true;
+        deadline.limit(number, unit);
+        reaction.timeout = context.getTimer().schedule(new Runnable()
+        {
+            public void run()
+            {
+                reaction.fire();
             }
+        }, number, unit);
+
+        if (providersFinished() || (!handlers.isEmpty() && handlers.get(0).isSatisfied())) {
+            reaction.fire();
+        }
+        return reaction.future;
+    }
+
+    /**
+     * True if callables were handed to this box and all of them have finished, in which
+     * case nothing better than what is satisfied now can arrive.
+     */
+    private boolean providersFinished()
+    {
+        return providers.get() > 0 && outstanding.get() == 0;
+    }
+
+    private void providerFinished(int round)
+    {
+        if (round != this.round) {
+            return;
+        }
+        outstanding.decrementAndGet();
+        if (reacting && providersFinished()) {
+            wake();
         }
+    }
+
+    /**
+     * Wakes whoever is waiting in react() or reactAsync().
+     */
+    private void wake()
+    {
+        flag.release();
+        AsyncReaction reaction = pending;
+        if (reaction != null) {
+            reaction.fire();
+        }
+    }
 
-        for (Handler<T> handler : handlers.values()) {
-            if (handler.isSatisfied()) {
-                T result = handler.handle();
+    /**
+     * Runs the best satisfied reactor, if any, and cancels outstanding providers.
+     */
+    private T fire() throws InvocationTargetException, IllegalAccessException
+    {
+        deadline.expire();
+        for (Handler<T> handler : handlers) {
+            Object[] args = handler.satisfiedArguments();
+            if (args != null) {
+                listener.reacted(handler.getPriority(), System.nanoTime() - created);
+                T result = handler.handle(args);
                 cleanUpFutures();
                 return result;
             }
         }
-        
+
+        listener.unmatched(System.nanoTime() - created);
         cleanUpFutures();
         return null;
     }
-    
+
     private void cleanUpFutures()
     {
+        Future<?> self = ProviderTask.current();
+        int cancelled = 0;
         for (Future<?> future : outstandingFutures) {
-            future.cancel(true);
+            if (future != self && future.cancel(true)) {
+                cancelled++;
+            }
+        }
+        if (cancelled > 0) {
+            listener.futuresCancelled(cancelled);
+        }
+        cancelHedgeTimers();
+    }
+
+    private void cancelHedgeTimers()
+    {
+        for (Future<?> timer : hedgeTimers) {
+            timer.cancel(false);
         }
     }
     
+    /**
+     * Readies this box for another round, as though it had just been created, while
+     * keeping its plan and the storage of its reactors. Outstanding providers are
+     * cancelled, and any which still finish are ignored. Values provided directly by
+     * other threads are not fenced off, so reset a box only once the previous round's
+     * callers are done with it. An unfinished {@link #reactAsync} future is cancelled.
+     */
+    public void reset()
+    {
+        round++;
+        AsyncReaction reaction = pending;
+        pending = null;
+        if (reaction != null && reaction.fired.compareAndSet(false, true)) {
+            ScheduledFuture<?> t = reaction.timeout;
+            if (t != null) {
+                t.cancel(false);
+            }
+            reaction.future.cancel(false);
+        }
+        deadline.expire();
+        deadline = new Deadline();
+        Future<?> self = ProviderTask.current();
+        for (Future<?> future : outstandingFutures) {
+            if (future != self) {
+                future.cancel(true);
+            }
+        }
+        outstandingFutures.clear();
+        cancelHedgeTimers();
+        hedgeTimers.clear();
+
+        reacting = false;
+        providers.set(0);
+        outstanding.set(0);
+        flag.drainPermits();
+        for (int i = 0; i < handlers.size(); i++) {
+            handlers.get(i).clear();
+            announced.set(i, 0);
+        }
+        memo.clear();
+        provided.set(false);
+        topSatisfied.set(false);
+        created = System.nanoTime();
+    }
+
     public static <T> TimeBox<T> timebox(Tesseract<T> handler)
     {
         return new TimeBox<T>(handler);
     }
+
+    private final class Hedge
+    {
+        private static final int UNDECIDED = -1;
+
+        private final HedgePolicy policy;
+        private final int authority;
+        private final Callable<?>[] attempts;
+        private final Future<?>[] futures;
+        private final int round;
+        // index of the attempt whose value was provided, or the number of attempts if all failed
+        private final AtomicInteger winner = new AtomicInteger(UNDECIDED);
+        // index of the latest attempt launched
+        private final AtomicInteger launched = new AtomicInteger(-1);
+        // attempts which have not failed
+        private final AtomicInteger remaining;
+
+        Hedge(HedgePolicy policy, int authority, Callable<?>[] attempts, int round)
+        {
+            this.round = round;
+            this.policy = policy;
+            this.authority = authority;
+            this.attempts = attempts;
+            this.futures = new Future<?>[attempts.length];
+            this.remaining = new AtomicInteger(attempts.length);
+        }
+
+        /**
+         * Launches the attempt at the given index unless it, or a later one, has been
+         * launched already: by the timer, or by an earlier attempt failing.
+         */
+        void launch(final int index)
+        {
+            if (winner.get() != UNDECIDED || index >= attempts.length || !launched.compareAndSet(index - 1, index)) {
+                return;
+            }
+
+            final long submitted = System.nanoTime();
+            Future<?> future;
+            try {
+                future = execute(new Runnable()
+                {
+                    public void run()
+                    {
+                        attempt(index, submitted);
+                    }
+                });
+            }
+            catch (RejectedExecutionException e) {
+                if (index == 0) {
+                    throw e;
+                }
+                failed();
+                return;
+            }
+            register(index, future);
+
+            if (index + 1 < attempts.length) {
+                try {
+                    hedgeTimers.add(context.getTimer().schedule(new Runnable()
+                    {
+                        public void run()
+                        {
+                            launch(index + 1);
+                        }
+                    }, policy.getDelayNanos(), TimeUnit.NANOSECONDS));
+                }
+                catch (RejectedExecutionException e) {
+                    // no timer for backups; they are still launched as attempts fail
+                }
+            }
+        }
+
+        private void attempt(int index, long submitted)
+        {
+            Object value = null;
+            try {
+                value = attempts[index].call();
+            }
+            catch (Exception e) {
+                // another attempt may yet succeed
+            }
+            long latency = System.nanoTime() - submitted;
+            listener.providerCompleted(latency, value == null);
+
+            if (value != null) {
+                policy.record(latency);
+                if (winner.compareAndSet(UNDECIDED, index)) {
+                    cancelOthers(index);
+                    if (round == TimeBox.this.round) {
+                        provide(value, authority);
+                    }
+                    providerFinished(round);
+                }
+            }
+            else {
+                failed();
+            }
+        }
+
+        /**
+         * Notes an attempt which produced nothing, and launches the next one straight away
+         * rather than waiting out the delay.
+         */
+        private void failed()
+        {
+            if (remaining.decrementAndGet() == 0) {
+                if (winner.compareAndSet(UNDECIDED, attempts.length)) {
+                    providerFinished(round);
+                }
+            }
+            else {
+                launch(launched.get() + 1);
+            }
+        }
+
+        private void register(int index, Future<?> future)
+        {
+            outstandingFutures.add(future);
+            synchronized (futures) {
+                futures[index] = future;
+            }
+            int won = winner.get();
+            if (won != UNDECIDED && won != index) {
+                // launched just as another attempt won
+                future.cancel(true);
+            }
+        }
+
+        private void cancelOthers(int winner)
+        {
+            synchronized (futures) {
+                for (int i = 0; i < futures.length; i++) {
+                    if (i != winner && futures[i] != null) {
+                        futures[i].cancel(true);
+                    }
+                }
+            }
+        }
+    }
+
+    private final class AsyncReaction
+    {
+        private final CompletableFuture<T> future = new CompletableFuture<T>();
+        private final AtomicBoolean fired = new AtomicBoolean();
+        private volatile ScheduledFuture<?> timeout;
+
+        /**
+         * Claims the reaction and runs the best satisfied reactor here, on the timer or
+         * providing thread which got here first, so that a deadline is met even when the
+         * context's executor is busy with blocked providers.
+         */
+        void fire()
+        {
+            if (!fired.compareAndSet(false, true)) {
+                return;
+            }
+            ScheduledFuture<?> t = timeout;
+            if (t != null) {
+                t.cancel(false);
+            }
+            Runnable complete;
+            try {
+                final T result = TimeBox.this.fire();
+                complete = new Runnable()
+                {
+                    public void run()
+                    {
+                        future.complete(result);
+                    }
+                };
+            }
+            catch (final Throwable e) {
+                complete = new Runnable()
+                {
+                    public void run()
+                    {
+                        future.completeExceptionally(e);
+                    }
+                };
+            }
+            try {
+                ForkJoinPool.commonPool().execute(complete);
+            }
+            catch (RejectedExecutionException e) {
+                complete.run();
+            }
+        }
+    }
+
+    /**
+     * A provider's future, which knows when it is running on the current thread so that a
+     * provider which ends up reacting does not interrupt itself.
+     */
+    private static final class ProviderTask extends FutureTask<Void>
+    {
+        private static final ThreadLocal<ProviderTask> CURRENT = new ThreadLocal<ProviderTask>();
+
+        ProviderTask(Runnable provider)
+        {
+            super(provider, null);
+        }
+
+        static Future<?> current()
+        {
+            return CURRENT.get();
+        }
+
+        @Override
+        public void run()
+        {
+            CURRENT.set(this);
+            try {
+                super.run();
+            }
+            finally {
+                CURRENT.remove();
+            }
+        }
+    }
 }
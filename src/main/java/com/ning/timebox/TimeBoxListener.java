@@ -0,0 +1,83 @@
+package com.ning.timebox;
+
+/**
+ * Receives timings and outcomes from a {@link TimeBox}. Callbacks happen inline on
+ * providing, reacting and timer threads, take only primitives, and so should be quick
+ * and must not block. Durations are in nanoseconds; box-relative ones are measured
+ * from the construction of the box.
+ *
+ * @see TimeBox#instrumented(TimeBoxListener)
+ * @see HistogramTimeBoxListener
+ */
+public interface TimeBoxListener
+{
+    /**
+     * Ignores everything; the default for a box which has not been instrumented.
+     */
+    TimeBoxListener NONE = new TimeBoxListener()
+    {
+        public void firstProvided(long nanos)
+        {
+        }
+
+        public void topPrioritySatisfied(long nanos)
+        {
+        }
+
+        public void reacted(int priority, long nanos)
+        {
+        }
+
+        public void unmatched(long nanos)
+        {
+        }
+
+        public void providerCompleted(long nanos, boolean failed)
+        {
+        }
+
+        public void futuresCancelled(int count)
+        {
+        }
+
+        public void guardRejected(int priority, int parameter)
+        {
+        }
+    };
+
+    /**
+     * The first value was provided to the box.
+     */
+    void firstProvided(long nanos);
+
+    /**
+     * The highest priority reactor became satisfied.
+     */
+    void topPrioritySatisfied(long nanos);
+
+    /**
+     * The reactor with the given priority was chosen and run.
+     */
+    void reacted(int priority, long nanos);
+
+    /**
+     * The box reacted but no reactor was satisfied.
+     */
+    void unmatched(long nanos);
+
+    /**
+     * A {@link TimeBox#providing} callable finished, {@code nanos} after it was submitted.
+     */
+    void providerCompleted(long nanos, boolean failed);
+
+    /**
+     * Reacting cancelled this many providers which had not yet finished.
+     */
+    void futuresCancelled(int count);
+
+    /**
+     * A guard on the given parameter of the reactor with the given priority rejected a
+     * value; parameter is -1 for guards on the reactor method itself.
+     */
+    void guardRejected(int priority, int parameter);
+}
@@ -0,0 +1,248 @@
+package com.ning.timebox;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * An immutable set of reactors declared in code rather than by annotating a
+ * {@link Tesseract}, so nothing is reflected over and no class is created per request.
+ * A plan is built once and shared; each box made from it only allocates its value slots.
+ * <pre>
+ * TimeBoxPlan&lt;String&gt; plan = TimeBoxPlan.&lt;String&gt;builder()
+ *     .reactor(3, best).slot(Dog.class).authority(5).slot(Cat.class)
+ *     .reactor(2, okay).gather(Dog.class).atLeast(2).guard(young)
+ *     .build();
+ *
+ * TimeBox&lt;String&gt; box = plan.newBox();
+ * </pre>
+ * Reactors are called with their arguments in the order their parameters were declared:
+ * a value for each slot, a List for each gather and a Map for each keyed parameter.
+ * Parameter options (authority, guard, atLeast and so on) apply to the most recently
+ * declared parameter.
+ */
+public final class TimeBoxPlan<T>
+{
+    private final BoxPlan plan;
+
+    private TimeBoxPlan(BoxPlan plan)
+    {
+        this.plan = plan;
+    }
+
+    public static <T> Builder<T> builder()
+    {
+        return new Builder<T>();
+    }
+
+    /**
+     * A box running this plan on the shared {@link ExecutionContext}.
+     */
+    public TimeBox<T> newBox()
+    {
+        return new TimeBox<T>(this);
+    }
+
+    public TimeBox<T> newBox(ExecutionContext context)
+    {
+        return new TimeBox<T>(context, this);
+    }
+
+    BoxPlan getPlan()
+    {
+        return plan;
+    }
+
+    public static final class Builder<T>
+    {
+        private final List<ReactorBuilder<T>> reactors = new ArrayList<ReactorBuilder<T>>();
+
+        private Builder()
+        {
+        }
+
+        /**
+         * Declares a reactor of the given priority; its parameters follow.
+         */
+        public ReactorBuilder<T> reactor(int priority, Reactor<? extends T> reactor)
+        {
+            ReactorBuilder<T> builder = new ReactorBuilder<T>(this, priority, reactor);
+            reactors.add(builder);
+            return builder;
+        }
+
+        /**
+         * Compiles the reactors declared so far; the builder may be used again afterwards.
+         */
+        public TimeBoxPlan<T> build()
+        {
+            List<HandlerPlan> plans = new ArrayList<HandlerPlan>(reactors.size());
+            for (ReactorBuilder<T> reactor : reactors) {
+                plans.add(new HandlerPlan(reactor.priority, reactor.reactor, reactor.parameters, reactor.guards));
+            }
+            return new TimeBoxPlan<T>(BoxPlan.forReactors(plans));
+        }
+    }
+
+    public static final class ReactorBuilder<T>
+    {
+        private final Builder<T> owner;
+        private final int priority;
+        private final Reactor<? extends T> reactor;
+        private final List<Parameter> parameters = new ArrayList<Parameter>();
+        private final List<Predicate<Object[]>> guards = new ArrayList<Predicate<Object[]>>();
+
+        private ReactorBuilder(Builder<T> owner, int priority, Reactor<? extends T> reactor)
+        {
+            this.owner = owner;
+            this.priority = priority;
+            this.reactor = reactor;
+        }
+
+        /**
+         * A parameter holding one value of the given type.
+         */
+        public ReactorBuilder<T> slot(Class<?> type)
+        {
+            parameters.add(new Parameter(Kind.SLOT, type));
+            return this;
+        }
+
+        /**
+         * A parameter gathering every value of the given type, as {@link Gather} does.
+         */
+        public ReactorBuilder<T> gather(Class<?> type)
+        {
+            parameters.add(new Parameter(Kind.GATHER, type));
+            return this;
+        }
+
+        /**
+         * A parameter made up of values of the given type provided under the given keys,
+         * as {@link Keyed} does.
+         */
+        public ReactorBuilder<T> keyed(Class<?> type, String... keys)
+        {
+            Parameter parameter = new Parameter(Kind.KEYED, type);
+            parameter.keys = keys.clone();
+            parameter.atLeast = Integer.MAX_VALUE;
+            parameters.add(parameter);
+            return this;
+        }
+
+        /**
+         * The authority a value needs to fill the last parameter, as {@link Authority}.
+         */
+        public ReactorBuilder<T> authority(long authority)
+        {
+            last(null, "authority").authority = authority;
+            return this;
+        }
+
+        /**
+         * A predicate values must pass to fill the last parameter. It is shared by every
+         * box made from the plan, so must be thread safe.
+         */
+        @SuppressWarnings("unchecked")
+        public ReactorBuilder<T> guard(Predicate<?> predicate)
+        {
+            last(null, "guard").guards.add((Predicate<Object>) predicate);
+            return this;
+        }
+
+        /**
+         * A predicate the reactor's whole argument array must pass before it may run.
+         */
+        public ReactorBuilder<T> guardArguments(Predicate<Object[]> predicate)
+        {
+            guards.add(predicate);
+            return this;
+        }
+
+        /**
+         * How many values the last gather, or keys the last keyed parameter, needs.
+         */
+        public ReactorBuilder<T> atLeast(int count)
+        {
+            Parameter parameter = last(null, "atLeast");
+            if (parameter.kind == Kind.SLOT) {
+                throw new IllegalStateException("atLeast applies to gathers and keyed parameters");
+            }
+            parameter.atLeast = count;
+            return this;
+        }
+
+        public ReactorBuilder<T> atMost(int count)
+        {
+            last(Kind.GATHER, "atMost").atMost = count;
+            return this;
+        }
+
+        public ReactorBuilder<T> overflow(Gather.Overflow overflow)
+        {
+            last(Kind.GATHER, "overflow").overflow = overflow;
+            return this;
+        }
+
+        /**
+         * Ranks gathered values for {@link Gather.Overflow#KEEP_TOP}.
+         */
+        public ReactorBuilder<T> comparator(Comparator<?> comparator)
+        {
+            last(Kind.GATHER, "comparator").comparator = comparator;
+            return this;
+        }
+
+        /**
+         * Declares the next reactor.
+         */
+        public ReactorBuilder<T> reactor(int priority, Reactor<? extends T> reactor)
+        {
+            return owner.reactor(priority, reactor);
+        }
+
+        public TimeBoxPlan<T> build()
+        {
+            return owner.build();
+        }
+
+        private Parameter last(Kind kind, String option)
+        {
+            if (parameters.isEmpty()) {
+                throw new IllegalStateException(option + " needs a parameter to apply to");
+            }
+            Parameter parameter = parameters.get(parameters.size() - 1);
+            if (kind != null && parameter.kind != kind) {
+                throw new IllegalStateException(option + " applies to " + kind.name().toLowerCase() + " parameters");
+            }
+            return parameter;
+        }
+    }
+
+    enum Kind
+    {
+        SLOT, GATHER, KEYED
+    }
+
+    /**
+     * One reactor parameter as declared to a builder.
+     */
+    static final class Parameter
+    {
+        final Kind kind;
+        final Class<?> type;
+        final List<Predicate<Object>> guards = new ArrayList<Predicate<Object>>();
+        long authority = Long.MIN_VALUE;
+        int atLeast = 0;
+        int atMost = Integer.MAX_VALUE;
+        Gather.Overflow overflow = Gather.Overflow.DROP_NEWEST;
+        Comparator comparator;
+        String[] keys;
+
+        Parameter(Kind kind, Class<?> type)
+        {
+            this.kind = kind;
+            this.type = type;
+        }
+    }
+}
@@ -10,4 +10,9 @@ import java.lang.annotation.RetentionPolicy;
 public @interface CLJ
 {
     String value();
+
+    /**
+     * Whether results may be memoized; see {@link GuardAnnotation}.
+     */
+    boolean pure() default false;
 }
@@ -5,43 +5,32 @@ import clojure.lang.IFn;
 import com.ning.timebox.GuardHouse;
 import com.ning.timebox.Predicate;
 
-import java.io.StringReader;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
 
-import static clojure.lang.Compiler.load;
-
+/**
+ * Builds predicates from {@link CLJ} forms. Compiling a form defines new classes, so
+ * compiled functions are kept in a bounded, least-recently-used cache keyed by source
+ * and each form is normally compiled once per JVM.
+ */
 public class ClojurePredicator implements GuardHouse
 {
+    /**
+     * System property bounding the number of compiled forms kept.
+     */
+    public static final String CACHE_SIZE_PROPERTY = "timebox.clojure.cache";
 
-    private static final IFn FALSY_APPLYSY;
-
-    static {
-        try {
-            FALSY_APPLYSY = (IFn) load(new StringReader("(fn [f a] (true? (apply f a)))"));
-        }
-        catch (Exception e) {
-            throw new RuntimeException(e);
-        }
-    }
+    private static final FunctionCache FUNCTIONS = new FunctionCache(Integer.getInteger(CACHE_SIZE_PROPERTY, 512));
 
     public Predicate<Object[]> buildMethodPredicate(Annotation a, Object target, Method method)
     {
-
-        final IFn fn;
-        final String clj = method.getAnnotation(CLJ.class).value();
-        try {
-            fn = (IFn) load(new StringReader(clj));
-        }
-        catch (Exception e) {
-            throw new UnsupportedOperationException("Not Yet Implemented!");
-        }
+        final IFn fn = compile(((CLJ) a).value());
         return new Predicate<Object[]>()
         {
             public boolean test(Object[] arg)
             {
                 try {
-                    return (Boolean) FALSY_APPLYSY.invoke(fn, ArraySeq.create(arg));
+                    return Boolean.TRUE.equals(apply(fn, arg));
                 }
                 catch (Exception e) {
                     throw new UnsupportedOperationException(e);
@@ -50,37 +39,21 @@ public class ClojurePredicator implements GuardHouse
         };
     }
 
-    private static final IFn FALSY;
-
-    static {
-        try {
-            FALSY = (IFn) load(new StringReader("(fn [t x] (true? (t x)))"));
-        }
-        catch (Exception e) {
-            throw new RuntimeException(e);
-        }
-    }
-
     public Predicate<Object> buildArgumentPredicate(Annotation annotation, Object target, Method m, int argumentIndex)
     {
-        try {
-            final IFn fn = (IFn) load(new StringReader(((CLJ) annotation).value()));
-            return new Predicate<Object>()
+        final IFn fn = compile(((CLJ) annotation).value());
+        return new Predicate<Object>()
+        {
+            public boolean test(Object arg)
             {
-                public boolean test(Object arg)
-                {
-                    try {
-                        return (Boolean) FALSY.invoke(fn, arg);
-                    }
-                    catch (Exception e) {
-                        throw new IllegalArgumentException(e);
-                    }
+                try {
+                    return Boolean.TRUE.equals(fn.invoke(arg));
                 }
-            };
-        }
-        catch (Exception e) {
-            throw new RuntimeException(e);
-        }
+                catch (Exception e) {
+                    throw new IllegalArgumentException(e);
+                }
+            }
+        };
     }
 
     public Predicate<Object> buildGatherPredicate(Annotation a,
@@ -91,4 +64,33 @@ public class ClojurePredicator implements GuardHouse
     {
         return buildArgumentPredicate(a, handler, m, argumentIndex);
     }
+
+    /**
+     * The function for a form, shared by every box using the same source.
+     */
+    static IFn compile(String clj)
+    {
+        return FUNCTIONS.get(clj);
+    }
+
+    /**
+     * Calls fn directly for common arities rather than building a seq to apply it to.
+     */
+    private static Object apply(IFn fn, Object[] args) throws Exception
+    {
+        switch (args.length) {
+            case 0:
+                return fn.invoke();
+            case 1:
+                return fn.invoke(args[0]);
+            case 2:
+                return fn.invoke(args[0], args[1]);
+            case 3:
+                return fn.invoke(args[0], args[1], args[2]);
+            case 4:
+                return fn.invoke(args[0], args[1], args[2], args[3]);
+            default:
+                return fn.applyTo(ArraySeq.create(args));
+        }
+    }
 }
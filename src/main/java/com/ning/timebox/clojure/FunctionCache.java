@@ -0,0 +1,54 @@
+package com.ning.timebox.clojure;
+
+import clojure.lang.IFn;
+
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static clojure.lang.Compiler.load;
+
+/**
+ * Compiled functions keyed by source, holding at most a fixed number and evicting the
+ * least recently used first.
+ */
+final class FunctionCache
+{
+    private final Map<String, IFn> functions;
+
+    FunctionCache(final int size)
+    {
+        this.functions = Collections.synchronizedMap(new LinkedHashMap<String, IFn>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, IFn> eldest)
+            {
+                return size() > size;
+            }
+        });
+    }
+
+    /**
+     * The function for a form, compiled if it is not cached.
+     */
+    IFn get(String clj)
+    {
+        IFn fn = functions.get(clj);
+        if (fn == null) {
+            try {
+                fn = (IFn) load(new StringReader(clj));
+            }
+            catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+            functions.put(clj, fn);
+        }
+        return fn;
+    }
+
+    int size()
+    {
+        return functions.size();
+    }
+}
@@ -10,4 +10,9 @@ import java.lang.annotation.RetentionPolicy;
 public @interface Rb
 {
     String value();
+
+    /**
+     * Whether results may be memoized; see {@link GuardAnnotation}.
+     */
+    boolean pure() default false;
 }
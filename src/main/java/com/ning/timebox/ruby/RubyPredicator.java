@@ -10,22 +10,21 @@ import com.ning.timebox.GuardHouse;
 
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+/**
+ * Builds predicates from {@link Rb} blocks. All blocks are evaluated in one shared,
+ * thread-safe JRuby runtime, and each distinct block is parsed into a lambda only once.
+ */
 public class RubyPredicator implements GuardHouse
 {
+    private static final ConcurrentMap<String, IRubyObject> LAMBDAS = new ConcurrentHashMap<String, IRubyObject>();
+
     public Predicate<Object[]> buildMethodPredicate(Annotation a, Object target, Method m)
     {
-        Rb rb = (Rb) a;
-        String block = rb.value().trim();
-        if (! (block.startsWith("{") && block.endsWith("}")) ) {
-            block = "{" + block + "}";
-        }
-
-        final ScriptingContainer container = new ScriptingContainer(LocalContextScope.THREADSAFE);
-        container.getProvider().getRubyInstanceConfig().setCompileMode(RubyInstanceConfig.CompileMode.JIT);
-        JavaEmbedUtils.EvalUnit unit = container.parse( "lambda " + block);
-
-        final IRubyObject ro =  unit.run();
+        final ScriptingContainer container = SharedRuntime.CONTAINER;
+        final IRubyObject ro = lambda((Rb) a);
 
         return new Predicate<Object[]>() {
 
@@ -38,17 +37,8 @@ public class RubyPredicator implements GuardHouse
 
     public Predicate<Object> buildArgumentPredicate(Annotation a, Object target, Method m, int argumentIndex)
     {
-        Rb rb = (Rb) a;
-        String block = rb.value().trim();
-        if (! (block.startsWith("{") && block.endsWith("}")) ) {
-            block = "{" + block + "}";
-        }
-
-        final ScriptingContainer container = new ScriptingContainer(LocalContextScope.THREADSAFE);
-        container.getProvider().getRubyInstanceConfig().setCompileMode(RubyInstanceConfig.CompileMode.JIT);
-        JavaEmbedUtils.EvalUnit unit = container.parse( "lambda " + block);
-
-        final IRubyObject ro =  unit.run();
+        final ScriptingContainer container = SharedRuntime.CONTAINER;
+        final IRubyObject ro = lambda((Rb) a);
 
         return new Predicate<Object>() {
 
@@ -62,9 +52,44 @@ public class RubyPredicator implements GuardHouse
     public Predicate<Object> buildGatherPredicate(Annotation a,
                                                   Object handler,
                                                   Method m,
-                                                  Class expectedType, 
+                                                  Class expectedType,
                                                   int argumentIndex)
     {
         return buildArgumentPredicate(a, handler, m, argumentIndex);
     }
+
+    /**
+     * The lambda for a block, parsed the first time the block is seen.
+     */
+    static IRubyObject lambda(Rb rb)
+    {
+        String block = rb.value().trim();
+        if (! (block.startsWith("{") && block.endsWith("}")) ) {
+            block = "{" + block + "}";
+        }
+
+        IRubyObject ro = LAMBDAS.get(block);
+        if (ro == null) {
+            JavaEmbedUtils.EvalUnit unit = SharedRuntime.CONTAINER.parse("lambda " + block);
+            ro = unit.run();
+            IRubyObject existing = LAMBDAS.putIfAbsent(block, ro);
+            if (existing != null) {
+                ro = existing;
+            }
+        }
+        return ro;
+    }
+
+    /**
+     * Holder so that the runtime is only started once a Ruby guard is actually used.
+     */
+    private static final class SharedRuntime
+    {
+        static final ScriptingContainer CONTAINER;
+
+        static {
+            CONTAINER = new ScriptingContainer(LocalContextScope.THREADSAFE);
+            CONTAINER.getProvider().getRubyInstanceConfig().setCompileMode(RubyInstanceConfig.CompileMode.JIT);
+        }
+    }
 }
@@ -6,7 +6,13 @@ import com.ning.timebox.clojure.CLJ;
 import com.ning.timebox.ruby.Rb;
 import junit.framework.TestCase;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -135,4 +141,200 @@ public class TestGather extends TestCase
         assertTrue(box.react(100, TimeUnit.MILLISECONDS));
         assertEquals(1, flag.get());
     }
+
+    public void testConcurrentGather() throws Exception
+    {
+        final AtomicInteger flag = new AtomicInteger(0);
+        final TimeBox<Boolean> box = timebox(new Tesseract<Boolean>()
+        {
+            @Priority(3)
+            public void best(@Gather Collection<Dog> dogs)
+            {
+                setResult(true);
+                flag.set(dogs.size());
+            }
+        });
+
+        final CountDownLatch latch = new CountDownLatch(8);
+        for (int t = 0; t < 8; t++) {
+            new Thread(new Runnable()
+            {
+                public void run()
+                {
+                    for (int i = 0; i < 100; i++) {
+                        box.provide(new Dog("Bean", i));
+                    }
+                    latch.countDown();
+                }
+            }).start();
+        }
+        latch.await();
+
+        assertTrue(box.react(100, TimeUnit.MILLISECONDS));
+        assertEquals(800, flag.get());
+    }
+
+    public void testQuorumReleasesEarly() throws Exception
+    {
+        final AtomicInteger flag = new AtomicInteger(0);
+        final TimeBox<Boolean> box = timebox(new Tesseract<Boolean>()
+        {
+            @Priority(3)
+            public void quorum(@Gather(atLeast = 3) Collection<Dog> dogs)
+            {
+                setResult(true);
+                flag.set(dogs.size());
+            }
+
+            @Priority(2)
+            public void some(@Gather Collection<Dog> dogs)
+            {
+                setResult(false);
+                flag.set(dogs.size());
+            }
+        });
+
+        box.provide(new Dog("Bean"));
+        box.provide(new Dog("Bouncer"));
+        assertFalse(box.react(1, TimeUnit.MILLISECONDS));
+        assertEquals(2, flag.get());
+
+        new Thread(new Runnable()
+        {
+            public void run()
+            {
+                box.provide(new Dog("Mac"));
+            }
+        }).start();
+
+        long start = System.nanoTime();
+        assertTrue(box.react(1, TimeUnit.MINUTES));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10));
+        assertEquals(3, flag.get());
+    }
+
+    public void testAtMost() throws Exception
+    {
+        final AtomicInteger flag = new AtomicInteger(0);
+        final TimeBox<Boolean> box = timebox(new Tesseract<Boolean>()
+        {
+            @Priority(3)
+            public void best(@Gather(atMost = 2) Collection<Dog> dogs)
+            {
+                setResult(true);
+                flag.set(dogs.size());
+            }
+        });
+
+        for (int i = 0; i < 5; i++) {
+            box.provide(new Dog("Bean", i));
+        }
+
+        assertTrue(box.react(10, TimeUnit.MILLISECONDS));
+        assertEquals(2, flag.get());
+    }
+
+    public void testDropOldest() throws Exception
+    {
+        final List<Integer> ages = new ArrayList<Integer>();
+        final TimeBox<Boolean> box = timebox(new Tesseract<Boolean>()
+        {
+            @Priority(3)
+            public void best(@Gather(atMost = 2, overflow = Gather.Overflow.DROP_OLDEST) Collection<Dog> dogs)
+            {
+                setResult(true);
+                for (Dog dog : dogs) {
+                    ages.add(dog.getAge());
+                }
+            }
+        });
+
+        for (int i = 0; i < 5; i++) {
+            box.provide(new Dog("Bean", i));
+        }
+
+        assertTrue(box.react(10, TimeUnit.MILLISECONDS));
+        assertEquals(Arrays.asList(3, 4), ages);
+    }
+
+    public void testKeepTopByComparator() throws Exception
+    {
+        final List<Integer> ages = new ArrayList<Integer>();
+        final TimeBox<Boolean> box = timebox(new Tesseract<Boolean>()
+        {
+            @Priority(3)
+            public void best(@Gather(atLeast = 3, atMost = 3, overflow = Gather.Overflow.KEEP_TOP, comparator = ByAge.class)
+                             Collection<Dog> dogs)
+            {
+                setResult(true);
+                for (Dog dog : dogs) {
+                    ages.add(dog.getAge());
+                }
+            }
+        });
+
+        for (int age : new int[]{5, 1, 9, 3, 7, 2}) {
+            box.provide(new Dog("Bean", age));
+        }
+
+        assertTrue(box.react(10, TimeUnit.MILLISECONDS));
+        Collections.sort(ages);
+        assertEquals(Arrays.asList(5, 7, 9), ages);
+    }
+
+    public void testKeepTopByAuthority() throws Exception
+    {
+        final List<Integer> ages = new ArrayList<Integer>();
+        final TimeBox<Boolean> box = timebox(new Tesseract<Boolean>()
+        {
+            @Priority(3)
+            public void best(@Gather(atMost = 2, overflow = Gather.Overflow.KEEP_TOP) Collection<Dog> dogs)
+            {
+                setResult(true);
+                for (Dog dog : dogs) {
+                    ages.add(dog.getAge());
+                }
+            }
+        });
+
+        box.provide(new Dog("Bean", 1), 10);
+        box.provide(new Dog("Bean", 2), 30);
+        box.provide(new Dog("Bean", 3), 5);
+        box.provide(new Dog("Bean", 4), 20);
+
+        assertTrue(box.react(10, TimeUnit.MILLISECONDS));
+        Collections.sort(ages);
+        assertEquals(Arrays.asList(2, 4), ages);
+    }
+
+    public void testProvidingAll() throws Exception
+    {
+        final AtomicInteger flag = new AtomicInteger(0);
+        final TimeBox<Boolean> box = timebox(new Tesseract<Boolean>()
+        {
+            @Priority(3)
+            public void best(@Gather(atLeast = 3) Collection<Dog> dogs, Cat cat)
+            {
+                setResult(true);
+                flag.set(dogs.size());
+            }
+        }).providingAll(new Callable<List<Object>>()
+        {
+            public List<Object> call() throws Exception
+            {
+                return Arrays.<Object>asList(new Dog("Bean"), new Cat(), new Dog("Bouncer"), new Dog("Happy"));
+            }
+        });
+
+        assertTrue(box.react(1, TimeUnit.MINUTES));
+        assertEquals(3, flag.get());
+    }
+
+    public static class ByAge implements Comparator<Dog>
+    {
+        public int compare(Dog a, Dog b)
+        {
+            return a.getAge() - b.getAge();
+        }
+    }
 }
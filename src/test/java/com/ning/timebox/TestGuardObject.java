@@ -3,7 +3,14 @@ package com.ning.timebox;
 import static com.ning.timebox.TimeBox.timebox;
 import junit.framework.TestCase;
 
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 public class TestGuardObject extends TestCase
@@ -71,4 +78,184 @@ public class TestGuardObject extends TestCase
         assertEquals("second", flag.get());
     }
 
+    public void testBoxedGuardMethodOnMethod() throws Exception
+    {
+        final AtomicReference<String> flag = new AtomicReference<String>();
+        final TimeBox<Boolean> box = timebox(new Tesseract<Boolean>()
+        {
+            @Priority(3)
+            @GuardMethod("bestGuard")
+            public void best(Dog dog, Cat cat)
+            {
+                setResult(true);
+                flag.set("first");
+            }
+
+            @Priority(2)
+            public void okay(Dog dog)
+            {
+                flag.set("second");
+            }
+
+            public Boolean bestGuard(Dog dog, Cat cat) {
+                return dog.getAge() < cat.getLivesRemaining();
+            }
+
+        });
+
+        box.provide(new Dog("Bean", 1));
+        box.provide(new Cat(4));
+
+        assertTrue(box.react(10, TimeUnit.MILLISECONDS));
+        assertEquals("first", flag.get());
+    }
+
+    public void testMethodGuardOnlyRunsOnChange() throws Exception
+    {
+        final AtomicInteger calls = new AtomicInteger(0);
+        final TimeBox<Boolean> box = timebox(new Tesseract<Boolean>()
+        {
+            @Priority(3)
+            @GuardMethod("bestGuard")
+            public void best(Dog dog, Cat cat)
+            {
+                setResult(true);
+            }
+
+            public boolean bestGuard(Dog dog, Cat cat) {
+                calls.incrementAndGet();
+                return true;
+            }
+
+        });
+
+        box.provide(new Dog("Bean", 1));
+        box.provide(new Cat(4));
+
+        assertTrue(box.react(10, TimeUnit.MILLISECONDS));
+        assertEquals(1, calls.get());
+    }
+
+    public void testGuardsRunOnGuardExecutor() throws Exception
+    {
+        final ExecutorService guards = Executors.newSingleThreadExecutor();
+        final Set<Thread> guardThreads = Collections.synchronizedSet(new HashSet<Thread>());
+        final AtomicReference<String> flag = new AtomicReference<String>();
+        try {
+            final TimeBox<Boolean> box = timebox(new Tesseract<Boolean>()
+            {
+                @Priority(3)
+                public void best(@GuardMethod("bestGuard") Dog dog)
+                {
+                    setResult(true);
+                    flag.set(dog.getName());
+                }
+
+                public boolean bestGuard(Dog dog)
+                {
+                    guardThreads.add(Thread.currentThread());
+                    return dog.getAge() < 5;
+                }
+            }).guardingOn(guards).providing(new Callable<Dog>()
+            {
+                public Dog call() throws Exception
+                {
+                    return new Dog("Bean", 2);
+                }
+            });
+
+            assertTrue(box.react(1, TimeUnit.MINUTES));
+            assertEquals("Bean", flag.get());
+            assertFalse(guardThreads.isEmpty());
+            assertFalse(guardThreads.contains(Thread.currentThread()));
+        }
+        finally {
+            guards.shutdown();
+        }
+    }
+
+    public void testPureGuardRunsOncePerValue() throws Exception
+    {
+        final AtomicInteger calls = new AtomicInteger();
+        final TimeBox<Boolean> box = timebox(new Tesseract<Boolean>()
+        {
+            @Priority(3)
+            public void best(@GuardMethod(value = "young", pure = true) Dog dog, Cat cat)
+            {
+                setResult(true);
+            }
+
+            @Priority(2)
+            public void okay(@GuardMethod(value = "young", pure = true) Dog dog)
+            {
+                setResult(false);
+            }
+
+            public boolean young(Dog dog)
+            {
+                calls.incrementAndGet();
+                return dog.getAge() < 5;
+            }
+        });
+
+        box.provide(new Dog("Bean", 2));
+        box.provide(new Dog("Bouncer", 9));
+        assertEquals(2, calls.get());
+
+        assertFalse(box.react(10, TimeUnit.MILLISECONDS));
+    }
+
+    public void testPredicateGuards() throws Exception
+    {
+        final AtomicReference<String> flag = new AtomicReference<String>();
+        final TimeBox<Boolean> box = timebox(new Tesseract<Boolean>()
+        {
+            @Priority(3)
+            @Guard(OutlivedByCat.class)
+            public void best(@Guard(Young.class) Dog dog, Cat cat)
+            {
+                setResult(true);
+                flag.set(dog.getName());
+            }
+
+            @Priority(2)
+            public void okay(@Guard(Named.class) Dog dog)
+            {
+                setResult(false);
+                flag.set(dog.getName());
+            }
+        });
+
+        box.provide(new Dog("Bean", 9));
+        box.provide(new Dog("Bouncer", 2));
+        box.provide(new Cat(1));
+
+        assertFalse(box.react(10, TimeUnit.MILLISECONDS));
+        assertEquals("Bean", flag.get());
+    }
+
+    public static class Young implements Predicate<Dog>
+    {
+        public boolean test(Dog dog)
+        {
+            return dog.getAge() < 5;
+        }
+    }
+
+    public static class Named implements java.util.function.Predicate<Dog>
+    {
+        public boolean test(Dog dog)
+        {
+            return dog.getName().equals("Bean");
+        }
+    }
+
+    public static class OutlivedByCat implements Predicate<Object[]>
+    {
+        public boolean test(Object[] args)
+        {
+            return ((Dog) args[0]).getAge() < ((Cat) args[1]).getLivesRemaining();
+        }
+    }
+
 }
@@ -6,10 +6,21 @@ import junit.framework.TestCase;
 import com.ning.timebox.clojure.CLJ;
 import com.ning.timebox.ruby.Rb;
 
+import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 public class TestTimeBox extends TestCase
 {
@@ -243,4 +254,645 @@ public class TestTimeBox extends TestCase
         assertEquals(0, flag.get());
     }
 
+    public void testPlanIsSharedAcrossBoxes() throws Exception
+    {
+        class Reactor extends Tesseract<Boolean>
+        {
+            @Priority(1)
+            public void stuff(Dog dog)
+            {
+                setResult(true);
+            }
+        }
+
+        BoxPlan first = BoxPlan.forClass(new DefaultFactory(), Reactor.class);
+        BoxPlan second = BoxPlan.forClass(new DefaultFactory(), Reactor.class);
+        assertSame(first, second);
+
+        // custom factories are not cached, so cannot accumulate plans
+        Factory custom = new Factory()
+        {
+            public <T> T instantiate(Class<T> clazz) throws InstantiationException, IllegalAccessException
+            {
+                return clazz.newInstance();
+            }
+        };
+        assertNotSame(BoxPlan.forClass(custom, Reactor.class), BoxPlan.forClass(custom, Reactor.class));
+
+        TimeBox<Boolean> box = timebox(new Reactor());
+        box.provide(new Dog());
+        assertTrue(box.react(10, TimeUnit.MILLISECONDS));
+    }
+
+    public void testReactorExceptionIsWrapped() throws Exception
+    {
+        final TimeBox<Boolean> box = timebox(new Tesseract<Boolean>()
+        {
+            @Priority(1)
+            public void stuff(Dog dog)
+            {
+                throw new IllegalStateException(dog.getName());
+            }
+        });
+
+        box.provide(new Dog("Bean"));
+        try {
+            box.react(10, TimeUnit.MILLISECONDS);
+            fail("reactor exception should propagate");
+        }
+        catch (InvocationTargetException e) {
+            assertEquals("Bean", e.getCause().getMessage());
+        }
+    }
+
+    public void testSupertypeParameters() throws Exception
+    {
+        final AtomicInteger flag = new AtomicInteger(0);
+        final TimeBox<Boolean> box = timebox(new Tesseract<Boolean>()
+        {
+            @Priority(3)
+            public void best(Cat cat, Object anything)
+            {
+                setResult(anything instanceof Dog);
+                flag.set(1);
+            }
+
+            @Priority(2)
+            public void okay(Dog dog)
+            {
+                flag.set(2);
+            }
+        });
+
+        box.provide(new Cat());
+        box.provide(new Dog());
+
+        assertTrue(box.react(10, TimeUnit.MILLISECONDS));
+        assertEquals(1, flag.get());
+    }
+
+    public void testReactAsyncCompletesOnSatisfaction() throws Exception
+    {
+        final TimeBox<Boolean> box = timebox(new Tesseract<Boolean>()
+        {
+            @Priority(3)
+            public void best(Dog dog, Cat cat)
+            {
+                setResult(true);
+            }
+
+            @Priority(2)
+            public void okay(Dog dog)
+            {
+                setResult(false);
+            }
+        });
+
+        CompletableFuture<Boolean> result = box.reactAsync(1, TimeUnit.MINUTES);
+        box.provide(new Dog());
+        assertFalse(result.isDone());
+        box.provide(new Cat());
+
+        assertTrue(result.get(100, TimeUnit.MILLISECONDS));
+    }
+
+    public void testReactAsyncFallsBackAtDeadline() throws Exception
+    {
+        final TimeBox<Boolean> box = timebox(new Tesseract<Boolean>()
+        {
+            @Priority(3)
+            public void best(Dog dog, Cat cat)
+            {
+                setResult(true);
+            }
+
+            @Priority(2)
+            public void okay(Dog dog)
+            {
+                setResult(false);
+            }
+        });
+
+        box.provide(new Dog());
+        assertFalse(box.reactAsync(10, TimeUnit.MILLISECONDS).get(100, TimeUnit.MILLISECONDS));
+    }
+
+    public void testReactAsyncDependentsRunOnExecutor() throws Exception
+    {
+        final TimeBox<Boolean> box = timebox(new Tesseract<Boolean>()
+        {
+            @Priority(1)
+            public void stuff(Dog dog)
+            {
+                setResult(true);
+            }
+        });
+
+        final AtomicBoolean interrupted = new AtomicBoolean(true);
+        final AtomicReference<String> thread = new AtomicReference<String>();
+        CompletableFuture<Void> satisfied = box.reactAsync(1, TimeUnit.MINUTES).thenAccept(new Consumer<Boolean>()
+        {
+            public void accept(Boolean result)
+            {
+                interrupted.set(Thread.currentThread().isInterrupted());
+                thread.set(Thread.currentThread().getName());
+            }
+        });
+        box.providing(new Callable<Dog>()
+        {
+            public Dog call() throws Exception
+            {
+                return new Dog();
+            }
+        });
+        satisfied.get(1, TimeUnit.SECONDS);
+        assertFalse(interrupted.get());
+
+        box.reset();
+        CompletableFuture<Void> expired = box.reactAsync(10, TimeUnit.MILLISECONDS).thenAccept(new Consumer<Boolean>()
+        {
+            public void accept(Boolean result)
+            {
+                thread.set(Thread.currentThread().getName());
+            }
+        });
+        expired.get(1, TimeUnit.SECONDS);
+        assertFalse(thread.get(), thread.get().contains("-timer"));
+    }
+
+    public void testReactAsyncMeetsDeadlineOnSaturatedContext() throws Exception
+    {
+        ExecutionContext context = new ExecutionContext(1);
+        try {
+            final TimeBox<Boolean> box = new TimeBox<Boolean>(context, new DefaultFactory(), new Tesseract<Boolean>()
+            {
+                @Priority(3)
+                public void best(Dog dog, Cat cat)
+                {
+                    setResult(true);
+                }
+
+                @Priority(2)
+                public void okay(Dog dog)
+                {
+                    setResult(false);
+                }
+            });
+            box.provide(new Dog());
+            box.providing(new Callable<Cat>()
+            {
+                public Cat call() throws Exception
+                {
+                    Thread.sleep(TimeUnit.SECONDS.toMillis(3));
+                    return new Cat();
+                }
+            });
+
+            long start = System.nanoTime();
+            assertFalse(box.reactAsync(50, TimeUnit.MILLISECONDS).get(1, TimeUnit.SECONDS));
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+        }
+        finally {
+            context.close();
+        }
+    }
+
+    public void testExecutionContextLifecycle() throws Exception
+    {
+        final ExecutionContext context = new ExecutionContext(2);
+        final TimeBox<Boolean> box = new TimeBox<Boolean>(context, new DefaultFactory(), new Tesseract<Boolean>()
+        {
+            @Priority(1)
+            public void stuff(Dog dog)
+            {
+                setResult(true);
+            }
+        });
+
+        assertTrue(box.providing(new Callable<Dog>()
+        {
+            public Dog call() throws Exception
+            {
+                return new Dog();
+            }
+        }).react(100, TimeUnit.MILLISECONDS));
+
+        context.close();
+        assertTrue(context.isClosed());
+        assertTrue(context.getExecutor().isShutdown());
+        assertNotSame(context, ExecutionContext.shared());
+    }
+
+    public void testVirtualThreadProvidersAreCancelled() throws Exception
+    {
+        final ExecutionContext context = ExecutionContext.virtualThreads();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        final TimeBox<Boolean> box = new TimeBox<Boolean>(context, new DefaultFactory(), new Tesseract<Boolean>()
+        {
+            @Priority(1)
+            public void stuff(Dog dog)
+            {
+                setResult(true);
+            }
+        });
+
+        box.providing(new Callable<Cat>()
+        {
+            public Cat call() throws Exception
+            {
+                started.countDown();
+                try {
+                    Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+                }
+                catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+                return new Cat();
+            }
+        });
+        started.await();
+
+        assertTrue(box.providing(new Callable<Dog>()
+        {
+            public Dog call() throws Exception
+            {
+                return new Dog();
+            }
+        }).react(100, TimeUnit.MILLISECONDS));
+
+        assertTrue(interrupted.await(1, TimeUnit.SECONDS));
+        context.close();
+    }
+
+    public void testInstrumentation() throws Exception
+    {
+        final HistogramTimeBoxListener metrics = new HistogramTimeBoxListener();
+        final TimeBox<Boolean> box = timebox(new Tesseract<Boolean>()
+        {
+            @Priority(3)
+            public void best(@GuardMethod("isPuppy") Dog dog, Cat cat)
+            {
+                setResult(true);
+            }
+
+            @Priority(2)
+            public void okay(Dog dog)
+            {
+                setResult(false);
+            }
+
+            public boolean isPuppy(Dog dog)
+            {
+                return dog.getAge() < 2;
+            }
+        }).instrumented(metrics);
+
+        box.providing(new Callable<Dog>()
+        {
+            public Dog call() throws Exception
+            {
+                return new Dog("Bean", 14);
+            }
+        });
+
+        assertFalse(box.react(50, TimeUnit.MILLISECONDS));
+        assertEquals(1, metrics.getReactions(2));
+        assertEquals(0, metrics.getReactions(3));
+        assertEquals(1, metrics.getGuardRejections());
+        assertEquals(1, metrics.getProviderLatency().getCount());
+        assertEquals(1, metrics.getTimeToFirstProvide().getCount());
+        assertEquals(0, metrics.getTimeToTopPriority().getCount());
+        assertEquals(1, metrics.getTimeToReaction().getCount());
+    }
+
+    public void testHistogramPercentiles() throws Exception
+    {
+        Histogram histogram = new Histogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1000, histogram.getMax());
+        long median = histogram.getValueAtPercentile(50);
+        assertTrue(median >= 500 && median <= 500 * 1.125);
+        assertEquals(1000, histogram.getValueAtPercentile(100));
+    }
+
+    public void testReleasesOnceProvidersFinish() throws Exception
+    {
+        final AtomicInteger flag = new AtomicInteger(0);
+        final TimeBox<Boolean> box = timebox(new Tesseract<Boolean>()
+        {
+            @Priority(3)
+            public void best(Dog dog, Cat cat)
+            {
+                flag.set(1);
+            }
+
+            @Priority(2)
+            public void okay(Dog dog)
+            {
+                setResult(true);
+                flag.set(2);
+            }
+        }).providing(new Callable<Dog>()
+        {
+            public Dog call() throws Exception
+            {
+                Thread.sleep(10);
+                return new Dog();
+            }
+        });
+
+        long start = System.nanoTime();
+        assertTrue(box.react(1, TimeUnit.MINUTES));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10));
+        assertEquals(2, flag.get());
+    }
+
+    public void testHedgedBackupWins() throws Exception
+    {
+        final CountDownLatch primaryCancelled = new CountDownLatch(1);
+        final AtomicInteger flag = new AtomicInteger(0);
+        final TimeBox<Boolean> box = timebox(new Tesseract<Boolean>()
+        {
+            @Priority(1)
+            public void stuff(Dog dog)
+            {
+                setResult(true);
+                flag.set(dog.getName().equals("backup") ? 1 : 2);
+            }
+        }).hedging(HedgePolicy.fixed(10, TimeUnit.MILLISECONDS), new Callable<Dog>()
+        {
+            public Dog call() throws Exception
+            {
+                try {
+                    Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+                }
+                catch (InterruptedException e) {
+                    primaryCancelled.countDown();
+                    throw e;
+                }
+                return new Dog("primary");
+            }
+        }, new Callable<Dog>()
+        {
+            public Dog call() throws Exception
+            {
+                return new Dog("backup");
+            }
+        });
+
+        assertTrue(box.react(1, TimeUnit.MINUTES));
+        assertEquals(1, flag.get());
+        assertTrue(primaryCancelled.await(1, TimeUnit.SECONDS));
+    }
+
+    public void testHedgedPrimaryWins() throws Exception
+    {
+        final AtomicInteger backups = new AtomicInteger(0);
+        final TimeBox<Boolean> box = timebox(new Tesseract<Boolean>()
+        {
+            @Priority(1)
+            public void stuff(Dog dog)
+            {
+                setResult(true);
+            }
+        }).hedging(HedgePolicy.fixed(50, TimeUnit.MILLISECONDS), new Callable<Dog>()
+        {
+            public Dog call() throws Exception
+            {
+                return new Dog("primary");
+            }
+        }, new Callable<Dog>()
+        {
+            public Dog call() throws Exception
+            {
+                backups.incrementAndGet();
+                return new Dog("backup");
+            }
+        });
+
+        assertTrue(box.react(1, TimeUnit.MINUTES));
+        Thread.sleep(100);
+        assertEquals(0, backups.get());
+    }
+
+    public void testHedgedBackupLaunchesWhenPrimaryFails() throws Exception
+    {
+        final TimeBox<Boolean> box = timebox(new Tesseract<Boolean>()
+        {
+            @Priority(1)
+            public void stuff(Dog dog)
+            {
+                setResult(dog.getName().equals("backup"));
+            }
+        }).hedging(HedgePolicy.fixed(1, TimeUnit.MINUTES), new Callable<Dog>()
+        {
+            public Dog call() throws Exception
+            {
+                throw new IllegalStateException("primary is down");
+            }
+        }, new Callable<Dog>()
+        {
+            public Dog call() throws Exception
+            {
+                return new Dog("backup");
+            }
+        });
+
+        long start = System.nanoTime();
+        assertTrue(box.react(10, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+    }
+
+    public void testReset() throws Exception
+    {
+        final AtomicInteger flag = new AtomicInteger(0);
+        final TimeBox<Boolean> box = timebox(new Tesseract<Boolean>()
+        {
+            @Priority(3)
+            public void best(Dog dog, Cat cat)
+            {
+                setResult(true);
+                flag.set(1);
+            }
+
+            @Priority(2)
+            public void okay(Dog dog)
+            {
+                setResult(false);
+                flag.set(2);
+            }
+        });
+
+        box.provide(new Dog());
+        box.provide(new Cat());
+        assertTrue(box.react(10, TimeUnit.MILLISECONDS));
+        assertEquals(1, flag.get());
+
+        box.reset();
+        assertNull(box.react(1, TimeUnit.NANOSECONDS));
+
+        box.reset();
+        box.provide(new Dog());
+        assertFalse(box.react(10, TimeUnit.MILLISECONDS));
+        assertEquals(2, flag.get());
+    }
+
+    public void testDeadlineIsPropagated() throws Exception
+    {
+        final CountDownLatch started = new CountDownLatch(1);
+        final AtomicLong budget = new AtomicLong(-1);
+        final AtomicBoolean expired = new AtomicBoolean();
+        final TimeBox<Boolean> box = timebox(new Tesseract<Boolean>()
+        {
+            @Priority(3)
+            public void best(Dog dog, Cat cat)
+            {
+                setResult(true);
+            }
+
+            @Priority(2)
+            public void okay(Dog dog)
+            {
+                setResult(false);
+            }
+        }).deadline(1, TimeUnit.SECONDS).providing(new Callable<Dog>()
+        {
+            public Dog call() throws Exception
+            {
+                return new Dog();
+            }
+        }).providing(new DeadlineCallable<Cat>()
+        {
+            public Cat call(Deadline deadline) throws Exception
+            {
+                budget.set(deadline.remaining(TimeUnit.MILLISECONDS));
+                started.countDown();
+                while (!deadline.isExpired()) {
+                    Thread.yield();
+                }
+                expired.set(true);
+                throw new IllegalStateException("too late to look for a cat");
+            }
+        });
+
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+        box.react(20, TimeUnit.MILLISECONDS);
+        assertTrue(budget.get() > 0 && budget.get() <= 1000);
+        long start = System.nanoTime();
+        while (!expired.get() && System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1)) {
+            Thread.sleep(1);
+        }
+        assertTrue(expired.get());
+    }
+
+    public void testValuesAfterDeadlineAreDropped() throws Exception
+    {
+        final TimeBox<Boolean> box = timebox(new Tesseract<Boolean>()
+        {
+            @Priority(3)
+            public void best(Dog dog, Cat cat)
+            {
+                setResult(true);
+            }
+
+            @Priority(2)
+            public void okay(Dog dog)
+            {
+                setResult(false);
+            }
+        }).deadline(20, TimeUnit.MILLISECONDS).providing(new DeadlineCallable<Cat>()
+        {
+            public Cat call(Deadline deadline) throws Exception
+            {
+                while (!deadline.isExpired()) {
+                    Thread.yield();
+                }
+                return new Cat();
+            }
+        });
+        box.provide(new Dog());
+
+        // the late cat is dropped, which also finishes the last provider
+        assertFalse(box.react(1, TimeUnit.MINUTES));
+    }
+
+    public void testSatisfactionIsAnnounced() throws Exception
+    {
+        final List<Integer> priorities = new Vector<Integer>();
+        final TimeBox<Boolean> box = timebox(new Tesseract<Boolean>()
+        {
+            @Priority(3)
+            public void best(Dog dog, Cat cat)
+            {
+                setResult(true);
+            }
+
+            @Priority(2)
+            public void okay(Dog dog)
+            {
+                setResult(false);
+            }
+        }).onSatisfied(new SatisfactionListener()
+        {
+            public void satisfied(int priority, Object[] arguments)
+            {
+                assertTrue(arguments[0] instanceof Dog);
+                priorities.add(priority);
+            }
+        });
+
+        box.provide(new Dog());
+        assertEquals(Arrays.asList(2), priorities);
+        box.provide(new Dog());
+        box.provide(new Cat());
+        assertEquals(Arrays.asList(2, 3), priorities);
+        assertTrue(box.react(10, TimeUnit.MILLISECONDS));
+    }
+
+    public void testKeyedSlots() throws Exception
+    {
+        final Map<String, Dog> seen = new HashMap<String, Dog>();
+        final AtomicInteger flag = new AtomicInteger(0);
+        final TimeBox<Boolean> box = timebox(new Tesseract<Boolean>()
+        {
+            @Priority(3)
+            public void all(@Keyed({"a", "b", "c"}) Map<String, Dog> shards)
+            {
+                setResult(true);
+                flag.set(1);
+            }
+
+            @Priority(2)
+            public void most(@Keyed(value = {"a", "b", "c"}, atLeast = 2) Map<String, Dog> shards)
+            {
+                setResult(true);
+                seen.putAll(shards);
+                flag.set(2);
+            }
+        });
+
+        box.provideKeyed("a", new Dog("first", 1), 2);
+        box.provideKeyed("a", new Dog("weaker", 1), 1);
+        box.provide(new Dog("unkeyed"));
+        box.provideKeyed("d", new Dog("unknown"));
+        box.provideKeyed("b", new Dog("second", 2));
+
+        assertTrue(box.react(10, TimeUnit.MILLISECONDS));
+        assertEquals(2, flag.get());
+        assertEquals(2, seen.size());
+        assertEquals("first", seen.get("a").getName());
+        assertEquals("second", seen.get("b").getName());
+
+        box.reset();
+        box.provideKeyed("a", new Dog());
+        box.provideKeyed("b", new Dog());
+        box.provideKeyed("c", new Dog());
+        assertTrue(box.react(1, TimeUnit.MINUTES));
+        assertEquals(1, flag.get());
+    }
+
 }
@@ -0,0 +1,83 @@
+package com.ning.timebox;
+
+import junit.framework.TestCase;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class TestTimeBoxPlan extends TestCase
+{
+    private static final TimeBoxPlan<String> PLAN = TimeBoxPlan.<String>builder()
+        .reactor(3, new Reactor<String>()
+        {
+            public String react(Object[] arguments)
+            {
+                return "best " + ((Dog) arguments[0]).getName();
+            }
+        }).slot(Dog.class).authority(5).slot(Cat.class)
+        .reactor(2, new Reactor<String>()
+        {
+            public String react(Object[] arguments)
+            {
+                return "okay " + ((List) arguments[0]).size();
+            }
+        }).gather(Dog.class).atLeast(2).guard(new Predicate<Dog>()
+        {
+            public boolean test(Dog dog)
+            {
+                return dog.getAge() < 5;
+            }
+        })
+        .reactor(1, new Reactor<String>()
+        {
+            public String react(Object[] arguments)
+            {
+                return "fallback";
+            }
+        })
+        .build();
+
+    public void testFirstChoice() throws Exception
+    {
+        TimeBox<String> box = PLAN.newBox();
+        box.provide(new Dog("Bean"), 5);
+        box.provide(new Cat());
+
+        assertEquals("best Bean", box.react(1, TimeUnit.MINUTES));
+    }
+
+    public void testGuardsAndAuthorities() throws Exception
+    {
+        TimeBox<String> box = PLAN.newBox();
+        box.provide(new Dog("Bean", 2), 4);
+        box.provide(new Dog("Bouncer", 9), 4);
+        box.provide(new Dog("Happy", 1), 4);
+        box.provide(new Cat());
+
+        assertEquals("okay 2", box.react(10, TimeUnit.MILLISECONDS));
+    }
+
+    public void testPlanIsReused() throws Exception
+    {
+        assertEquals("fallback", PLAN.newBox().react(1, TimeUnit.NANOSECONDS));
+        assertEquals("fallback", PLAN.newBox().react(1, TimeUnit.NANOSECONDS));
+    }
+
+    public void testDuplicatePriority() throws Exception
+    {
+        Reactor<String> reactor = new Reactor<String>()
+        {
+            public String react(Object[] arguments)
+            {
+                return null;
+            }
+        };
+        try {
+            TimeBoxPlan.<String>builder().reactor(1, reactor).reactor(1, reactor).build();
+            fail("expected duplicate priorities to be rejected");
+        }
+        catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
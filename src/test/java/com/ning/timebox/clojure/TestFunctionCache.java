@@ -0,0 +1,27 @@
+package com.ning.timebox.clojure;
+
+import clojure.lang.IFn;
+import junit.framework.TestCase;
+
+public class TestFunctionCache extends TestCase
+{
+    public void testFormsAreCompiledOnce() throws Exception
+    {
+        assertSame(ClojurePredicator.compile("#(= % 5)"), ClojurePredicator.compile("#(= % 5)"));
+    }
+
+    public void testLeastRecentlyUsedIsEvicted() throws Exception
+    {
+        FunctionCache cache = new FunctionCache(2);
+        IFn first = cache.get("#(= % 1)");
+        IFn second = cache.get("#(= % 2)");
+        assertSame(first, cache.get("#(= % 1)"));
+
+        cache.get("#(= % 3)");
+        assertEquals(2, cache.size());
+        assertSame(first, cache.get("#(= % 1)"));
+        IFn recompiled = cache.get("#(= % 2)");
+        assertNotSame(second, recompiled);
+        assertEquals(Boolean.TRUE, recompiled.invoke(2));
+    }
+}
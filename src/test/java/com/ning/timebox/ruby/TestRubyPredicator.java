@@ -0,0 +1,60 @@
+package com.ning.timebox.ruby;
+
+import com.ning.timebox.Predicate;
+import junit.framework.TestCase;
+
+import java.lang.reflect.Method;
+
+public class TestRubyPredicator extends TestCase
+{
+    public void testBlocksAreParsedOnce() throws Exception
+    {
+        assertSame(RubyPredicator.lambda(guard("three")), RubyPredicator.lambda(guard("alsoThree")));
+        assertNotSame(RubyPredicator.lambda(guard("three")), RubyPredicator.lambda(guard("remember")));
+    }
+
+    public void testBlocksShareOneRuntime() throws Exception
+    {
+        Predicate<Object> remember = predicate("remember");
+        Predicate<Object> recall = predicate("recall");
+
+        assertTrue(remember.test(7));
+        assertTrue(recall.test(7));
+        assertFalse(recall.test(8));
+    }
+
+    private static Predicate<Object> predicate(String name) throws Exception
+    {
+        Method method = Guards.class.getMethod(name);
+        return new RubyPredicator().buildArgumentPredicate(method.getAnnotation(Rb.class), new Guards(), method, 0);
+    }
+
+    private static Rb guard(String name) throws Exception
+    {
+        return Guards.class.getMethod(name).getAnnotation(Rb.class);
+    }
+
+    public static class Guards
+    {
+        @Rb("|n| n == 3")
+        public void three()
+        {
+        }
+
+        @Rb("|n| n == 3")
+        public void alsoThree()
+        {
+        }
+
+        // a global set by one block is only visible to another in the same runtime
+        @Rb("|n| $timebox_seen = n; true")
+        public void remember()
+        {
+        }
+
+        @Rb("|n| $timebox_seen == n")
+        public void recall()
+        {
+        }
+    }
+}